@@ -0,0 +1,103 @@
+package edu.ucr.cs242;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram, in the style of HdrHistogram.
+ * Latencies are recorded in microseconds, into buckets that are linear below 64 us
+ * and then split every power of two into 32 sub-buckets, thus within ~3% of the actual value.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_EXPONENT = Long.SIZE - 1 - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT + 2) * HALF_SUB_BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKET_COUNT)
+            return (int) micros;
+
+        // The bucket keeps the SUB_BUCKET_BITS most significant bits of the value.
+        int exponent = Long.SIZE - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return exponent * HALF_SUB_BUCKET_COUNT + (int) (micros >>> exponent);
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int exponent = index / HALF_SUB_BUCKET_COUNT - 1;
+        long subBucket = index - exponent * HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << exponent) - 1;
+    }
+
+    /**
+     * Record a latency.
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0);
+        counts.incrementAndGet(indexOf(micros));
+        totalCount.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Get the mean latency.
+     * @return The mean latency in microseconds, or 0 if nothing is recorded.
+     */
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) totalMicros.sum() / count;
+    }
+
+    /**
+     * Get the maximum latency.
+     * @return The maximum latency in microseconds.
+     */
+    public long getMax() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Get the latency at a given percentile.
+     * @param percentile The percentile, within [0, 100].
+     * @return The latency in microseconds, at which percentile% of the recorded latencies are below.
+     */
+    public long getPercentile(double percentile) {
+        long count = totalCount.sum();
+        if (count == 0)
+            return 0;
+
+        long target = Math.max((long) Math.ceil(percentile / 100.0 * count), 1);
+        long cumulative = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= target)
+                return Math.min(highestValueAt(i), getMax());
+        }
+
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+                getCount(), getMean() / 1000.0,
+                getPercentile(50) / 1000.0, getPercentile(90) / 1000.0,
+                getPercentile(99) / 1000.0, getPercentile(99.9) / 1000.0, getMax() / 1000.0);
+    }
+}
@@ -13,10 +13,26 @@ public class Launcher {
                 new Subroutine("crawler",
                         "edu.ucr.cs242.crawler.WikiCrawler",
                         "execute the Wikipedia crawler"));
+        subroutines.put("mockwiki",
+                new Subroutine("mockwiki",
+                        "edu.ucr.cs242.crawler.MockWiki",
+                        "load test the crawler against a synthetic wiki"));
+        subroutines.put("benchmark",
+                new Subroutine("benchmark",
+                        "edu.ucr.cs242.crawler.CrawlerBenchmark",
+                        "compare parts of the crawler with their former implementations"));
         subroutines.put("indexer",
                 new Subroutine("indexer",
                         "edu.ucr.cs242.indexing.Indexer",
                         "execute the Lucene indexer"));
+        subroutines.put("searcher",
+                new Subroutine("searcher",
+                        "edu.ucr.cs242.searching.Searcher",
+                        "serve queries against the Lucene index"));
+        subroutines.put("pagerank",
+                new Subroutine("pagerank",
+                        "edu.ucr.cs242.ranking.PageRank",
+                        "compute the PageRank of the crawled pages"));
     }
 
     private static void printMessage(String message) {
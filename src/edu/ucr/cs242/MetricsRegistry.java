@@ -0,0 +1,154 @@
+package edu.ucr.cs242;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, gauges & latency histograms, shared by the threads of a run. They are exposed as the attributes
+ * of an MBean (a histogram as NAME.count, NAME.mean_us, NAME.p50_us & so on), and as a flat JSON object,
+ * to be dumped one line at a time.
+ * Metrics are registered as they are first asked for; updating one is as cheap as updating a LongAdder.
+ */
+public class MetricsRegistry implements DynamicMBean {
+    private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private ObjectName registeredName;
+
+    /**
+     * Get a counter, registering it if not yet.
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Get a histogram, registering it if not yet.
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Register a histogram recorded elsewhere.
+     */
+    public void register(String name, LatencyHistogram histogram) {
+        histograms.put(name, histogram);
+    }
+
+    /**
+     * Register a gauge, read whenever the metrics are.
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Read all metrics at once, by name.
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        histograms.forEach((name, histogram) -> {
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".mean_us", histogram.getMean());
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                values.put(name + "." + PERCENTILE_NAMES[i] + "_us", histogram.getPercentile(PERCENTILES[i]));
+            }
+            values.put(name + ".max_us", histogram.getMax());
+        });
+        return values;
+    }
+
+    /**
+     * Get all metrics as a JSON object on one line, with the time read as "time".
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"time\":\"").append(LocalDateTime.now()).append('"');
+        snapshot().forEach((name, value) -> {
+            json.append(",\"").append(name).append("\":");
+            if (value instanceof Double)
+                json.append(String.format(Locale.ROOT, "%.1f", value.doubleValue()));
+            else
+                json.append(value);
+        });
+        return json.append('}').toString();
+    }
+
+    /**
+     * Expose the metrics through the platform MBean server.
+     * @param name The object name, such as "edu.ucr.cs242:type=WikiCrawler".
+     */
+    public void registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+
+    /**
+     * Withdraw the metrics from the platform MBean server, if registered.
+     */
+    public void unregisterMBean() {
+        if (registeredName == null)
+            return;
+        try { ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName); }
+        catch (JMException e) { /* already gone */ }
+        registeredName = null;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = snapshot().get(attribute);
+        if (value == null)
+            throw new AttributeNotFoundException(attribute);
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> values = snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (values.containsKey(attribute))
+                list.add(new Attribute(attribute, values.get(attribute)));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Number> values = snapshot();
+        MBeanAttributeInfo[] attributes = values.entrySet().stream()
+                .map(entry -> new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                        entry.getKey(), true, false, false))
+                .toArray(MBeanAttributeInfo[]::new);
+        return new MBeanInfo(getClass().getName(), "Counters, gauges & latency histograms (microseconds).",
+                attributes, null, null, null);
+    }
+}
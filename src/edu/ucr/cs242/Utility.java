@@ -3,9 +3,15 @@ package edu.ucr.cs242;
 import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Utility {
     public static void waitThreads(Thread[] threads) {
@@ -25,8 +31,10 @@ public class Utility {
     }
 
     public static String elapsedTime(LocalDateTime start, LocalDateTime end) {
-        Duration elapsed = Duration.between(start, end);
+        return elapsedTime(Duration.between(start, end));
+    }
 
+    public static String elapsedTime(Duration elapsed) {
         long hours = elapsed.toHours();
         long minutes = elapsed.toMinutes() % 60;
         long seconds = elapsed.getSeconds() % 60;
@@ -35,6 +43,22 @@ public class Utility {
         return String.format("%02d:%02d:%02d.%03d", hours, minutes, seconds, milliseconds);
     }
 
+    /**
+     * Delete a directory with everything under it. Nothing happens if it does not exist.
+     * @param path The directory to delete.
+     */
+    public static void deleteDirectory(Path path) throws IOException {
+        if (!Files.exists(path))
+            return;
+
+        // Children come after their parents, thus delete in reverse order.
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path child : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(child);
+            }
+        }
+    }
+
     public static boolean openOutputLog(String logOutput) {
         if (logOutput != null) {
             try {
@@ -0,0 +1,104 @@
+package edu.ucr.cs242.crawler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Bloom filter over the url fingerprints, the smallest of all: about 1.2 bytes per url at 1% false positives.
+ * A false positive makes the crawler skip a url it has never seen, so the rate should be kept low.
+ * The filter does not grow; beyond the expected size, the false positive rate goes up.
+ */
+public class BloomVisitedSet implements VisitedSet {
+    private final AtomicLongArray bits;
+    private final long numOfBits;
+    private final int numOfHashes;
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Construct a Bloom filter.
+     * @param expectedSize  The expected number of urls.
+     * @param falsePositive The false positive rate at the expected size, in (0, 1).
+     */
+    public BloomVisitedSet(long expectedSize, double falsePositive) {
+        if (falsePositive <= 0 || falsePositive >= 1)
+            throw new IllegalArgumentException("false positive rate must be in (0, 1): " + falsePositive);
+
+        // The optimal m = -n ln(p) / ln(2)^2 bits, and k = m / n ln(2) hashes.
+        long optimalBits = (long) Math.ceil(-Math.max(expectedSize, 1) * Math.log(falsePositive) /
+                (Math.log(2) * Math.log(2)));
+        long numOfWords = (optimalBits + 63) / 64;
+        if (numOfWords > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("expected size too large: " + expectedSize);
+
+        this.bits = new AtomicLongArray((int) numOfWords);
+        this.numOfBits = numOfWords * 64;
+        this.numOfHashes = Math.max(1, (int) Math.round((double) numOfBits / Math.max(expectedSize, 1) * Math.log(2)));
+    }
+
+    /**
+     * The i-th bit index, by double hashing the two halves of the fingerprint.
+     */
+    private long bitIndex(long fingerprint, int i) {
+        long combined = (fingerprint >>> 32) + i * (fingerprint & 0xFFFFFFFFL | 1);
+        return Long.remainderUnsigned(combined, numOfBits);
+    }
+
+    @Override
+    public boolean add(String url) {
+        return addFingerprint(VisitedSet.fingerprint(url));
+    }
+
+    @Override
+    public boolean addFingerprint(long fingerprint) {
+        boolean changed = false;
+
+        for (int i = 0; i < numOfHashes; i++) {
+            long index = bitIndex(fingerprint, i);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+
+            long current = bits.get(word);
+            while ((current & mask) == 0) {
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    changed = true;
+                    break;
+                }
+                current = bits.get(word);
+            }
+        }
+
+        if (changed)
+            size.increment();
+        return changed;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        long fingerprint = VisitedSet.fingerprint(url);
+
+        for (int i = 0; i < numOfHashes; i++) {
+            long index = bitIndex(fingerprint, i);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of urls added, less the ones taken as false positives.
+     */
+    @Override
+    public long size() {
+        return size.sum();
+    }
+
+    @Override
+    public long memoryUsage() {
+        return bits.length() * 8L;
+    }
+
+    @Override
+    public String toString() {
+        return "bloom";
+    }
+}
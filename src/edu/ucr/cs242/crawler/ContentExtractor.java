@@ -0,0 +1,129 @@
+package edu.ucr.cs242.crawler;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+
+/**
+ * The text content of an article, in one traversal of its DOM. The subtrees not wanted (references, `edit` links,
+ * tables, divs, and headings followed directly by another of the same level) are removed as they are met, and
+ * the text of each remaining child of the content is written straight into a reused buffer.
+ * The result is the same as the former select() sweeps, which CrawlerBenchmark keeps for comparison.
+ * Not thread-safe, as the buffer is reused; one for each crawl thread.
+ */
+public class ContentExtractor implements NodeFilter {
+    private final StringBuilder buffer = new StringBuilder();
+    private Element root;
+    private int keptCount;
+    // Where the current child of the content starts in buffer, before & after the separator.
+    private int childMark;
+    private int childStart;
+    private boolean childHasText;
+
+    /**
+     * Check if an element is removed on its own, regardless of its siblings.
+     */
+    private static boolean isUnwanted(Element element) {
+        switch (element.tagName()) {
+            case "table": case "div":
+                return true;
+            case "sup":
+                return "reference".equalsIgnoreCase(element.attr("class").trim());
+            case "span":
+                return "mw-editsection".equalsIgnoreCase(element.attr("class").trim());
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isHeading(String tagName) {
+        return tagName.length() == 2 && tagName.charAt(0) == 'h' &&
+                tagName.charAt(1) >= '1' && tagName.charAt(1) <= '6';
+    }
+
+    /**
+     * Check if a heading has no paragraphs below it, that is followed by another heading of the same level,
+     * not counting the elements removed on their own.
+     */
+    private static boolean isEmptyHeading(Element element) {
+        if (!isHeading(element.tagName()))
+            return false;
+
+        Element next = element.nextElementSibling();
+        while (next != null && isUnwanted(next)) {
+            next = next.nextElementSibling();
+        }
+        return next != null && next.tagName().equals(element.tagName());
+    }
+
+    @Override
+    public FilterResult head(Node node, int depth) {
+        if (node instanceof TextNode) {
+            // The text directly under the content is not in any child.
+            if (depth > 1) {
+                TextNode text = (TextNode) node;
+                buffer.append(text.getWholeText());
+                childHasText = childHasText || !text.isBlank();
+            }
+            return FilterResult.CONTINUE;
+        }
+
+        if (node == root || !(node instanceof Element))
+            return FilterResult.CONTINUE;
+
+        Element element = (Element) node;
+        if (isUnwanted(element) || isEmptyHeading(element))
+            return FilterResult.REMOVE;
+
+        if (depth == 1) {
+            childMark = buffer.length();
+            if (keptCount > 0)
+                buffer.append('\n');
+            childStart = buffer.length();
+            childHasText = false;
+        }
+        return FilterResult.CONTINUE;
+    }
+
+    @Override
+    public FilterResult tail(Node node, int depth) {
+        if (depth == 1 && node instanceof Element) {
+            if (!childHasText) {
+                // We don't need empty elements (that is with no text).
+                buffer.setLength(childMark);
+            } else {
+                // Trim the text of the child, as String.trim() does.
+                int end = buffer.length();
+                while (end > childStart && buffer.charAt(end - 1) <= ' ') {
+                    --end;
+                }
+                buffer.setLength(end);
+
+                int start = childStart;
+                while (start < end && buffer.charAt(start) <= ' ') {
+                    ++start;
+                }
+                buffer.delete(childStart, start);
+                ++keptCount;
+            }
+        }
+        return FilterResult.CONTINUE;
+    }
+
+    /**
+     * Extract the content, removing the subtrees not wanted from the element as well.
+     * @param content The element holding the content of the article.
+     * @return The text of the children with text, each trimmed, one per line.
+     */
+    public String extract(Element content) {
+        buffer.setLength(0);
+        root = content;
+        keptCount = 0;
+
+        NodeTraversor.filter(this, content);
+        root = null;
+        return buffer.toString();
+    }
+}
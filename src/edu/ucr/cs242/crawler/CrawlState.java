@@ -0,0 +1,153 @@
+package edu.ucr.cs242.crawler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Properties;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The frontier & visited urls on disk, so that a crawl can be resumed after the process dies.
+ * Three append-only logs are kept: the fingerprints of the visited urls, the enqueued urls with their depths,
+ * and the fingerprints of the urls done crawling. A checkpoint flushes the logs, then atomically replaces a file
+ * recording their lengths; whatever comes after those lengths is discarded on resume.
+ * The logs are checkpointed in the order visited, frontier, done. So a url in the visited log, up to
+ * the checkpoint, is also in the frontier log or was never meant to be enqueued, and no url is lost.
+ */
+public class CrawlState implements Closeable {
+    public static final String VISITED_LOG = "visited.log";
+    public static final String FRONTIER_LOG = "frontier.log";
+    public static final String DONE_LOG = "done.log";
+    public static final String CHECKPOINT = "checkpoint";
+
+    private final Path stateDir;
+    private final boolean resumed;
+    private final Properties lengths;
+    private final MappedLog visitedLog;
+    private final MappedLog frontierLog;
+    private final MappedLog doneLog;
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Open the state of a crawl.
+     * @param stateDir The directory of the logs, created if not exists.
+     * @param resume   Whether to continue from the last checkpoint, or to start over.
+     */
+    public CrawlState(Path stateDir, boolean resume) throws IOException {
+        this.stateDir = Files.createDirectories(stateDir);
+        this.resumed = resume && Files.exists(stateDir.resolve(CHECKPOINT));
+        this.lengths = new Properties();
+
+        if (resumed) {
+            try (InputStream input = Files.newInputStream(stateDir.resolve(CHECKPOINT))) {
+                lengths.load(input);
+            }
+        } else {
+            for (String file : new String[] { VISITED_LOG, FRONTIER_LOG, DONE_LOG, CHECKPOINT }) {
+                Files.deleteIfExists(stateDir.resolve(file));
+            }
+        }
+
+        this.visitedLog = new MappedLog(stateDir.resolve(VISITED_LOG), getLength(VISITED_LOG));
+        this.frontierLog = new MappedLog(stateDir.resolve(FRONTIER_LOG), getLength(FRONTIER_LOG));
+        this.doneLog = new MappedLog(stateDir.resolve(DONE_LOG), getLength(DONE_LOG));
+    }
+
+    private long getLength(String file) {
+        return Long.parseLong(lengths.getProperty(file, "0"));
+    }
+
+    private void reportFailure(MappedLog log, IOException e) {
+        // Keep crawling; the worst case is that the next resume starts from an earlier checkpoint.
+        System.out.println("CrawlState cannot append to " + log + ": " + e.getMessage());
+    }
+
+    public void logVisited(String url) {
+        try { visitedLog.appendLong(VisitedSet.fingerprint(url)); }
+        catch (IOException e) { reportFailure(visitedLog, e); }
+    }
+
+    public void logEnqueued(String url, int depth) {
+        try { frontierLog.appendRecord(depth, url); }
+        catch (IOException e) { reportFailure(frontierLog, e); }
+    }
+
+    public void logDone(String url) {
+        try { doneLog.appendLong(VisitedSet.fingerprint(url)); }
+        catch (IOException e) { reportFailure(doneLog, e); }
+    }
+
+    /**
+     * Restore the state up to the last checkpoint.
+     * @param visitedUrls The set to restore the visited urls into.
+     * @param pending     Receives the urls enqueued but not done, with their depths.
+     */
+    public void replay(VisitedSet visitedUrls, ObjIntConsumer<String> pending) throws IOException {
+        long visitedCount = getLength(VISITED_LOG) / Long.BYTES;
+        long doneCount = getLength(DONE_LOG) / Long.BYTES;
+        long pendingCount = 0;
+
+        try (DataInputStream input = MappedLog.openReader(stateDir.resolve(VISITED_LOG), getLength(VISITED_LOG))) {
+            for (long i = 0; i < visitedCount; i++) {
+                visitedUrls.addFingerprint(input.readLong());
+            }
+        }
+
+        VisitedSet doneUrls = new FingerprintVisitedSet(doneCount);
+        try (DataInputStream input = MappedLog.openReader(stateDir.resolve(DONE_LOG), getLength(DONE_LOG))) {
+            for (long i = 0; i < doneCount; i++) {
+                doneUrls.addFingerprint(input.readLong());
+            }
+        }
+
+        try (DataInputStream input = MappedLog.openReader(stateDir.resolve(FRONTIER_LOG), getLength(FRONTIER_LOG))) {
+            while (true) {
+                int depth;
+                try { depth = input.readInt(); }
+                catch (EOFException e) { break; }
+
+                byte[] bytes = new byte[input.readUnsignedShort()];
+                input.readFully(bytes);
+                String url = new String(bytes, StandardCharsets.UTF_8);
+                if (!doneUrls.contains(url)) {
+                    pending.accept(url, depth);
+                    ++pendingCount;
+                }
+            }
+        }
+
+        System.out.println("CrawlState resumed from " + stateDir + ": " + visitedCount + " visited urls, " +
+                doneCount + " crawled, " + pendingCount + " pending.");
+    }
+
+    /**
+     * Flush the logs, and record their lengths as the point to resume from.
+     */
+    public synchronized void checkpoint() throws IOException {
+        lengths.setProperty(VISITED_LOG, String.valueOf(visitedLog.force()));
+        lengths.setProperty(FRONTIER_LOG, String.valueOf(frontierLog.force()));
+        lengths.setProperty(DONE_LOG, String.valueOf(doneLog.force()));
+
+        Path temporary = stateDir.resolve(CHECKPOINT + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temporary.toFile())) {
+            lengths.store(output, "CrawlState checkpoint at " + LocalDateTime.now());
+            output.getFD().sync();
+        }
+        Files.move(temporary, stateDir.resolve(CHECKPOINT),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void close() throws IOException {
+        checkpoint();
+        visitedLog.close();
+        frontierLog.close();
+        doneLog.close();
+    }
+}
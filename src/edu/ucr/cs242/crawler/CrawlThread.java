@@ -1,62 +1,52 @@
 package edu.ucr.cs242.crawler;
 
+import edu.ucr.cs242.LatencyHistogram;
+import edu.ucr.cs242.MetricsRegistry;
 import edu.ucr.cs242.OnThreadExitEventListener;
 import edu.ucr.cs242.Utility;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLDecoder;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.function.Supplier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * The actual thread for crawling, also a producer class.
+ * The actual thread for crawling, which parses the fetched pages. Also a producer class.
  */
 public class CrawlThread extends Thread {
+    private static final Pattern LAST_MODIFY_PATTERN = Pattern.compile("edited on ([^,]*), at ([^.]*)");
+
     private final int threadId;
-    private Set<String> visitedUrls;
+    private final Frontier frontier;
+    private final Fetcher fetcher;
+    private final BlockingQueue<Fetcher.FetchResult> fetchResults;
+    private final AtomicInteger crawledCount;
     private final int numOfPages;
     private final int crawlDepth;
-    private final int crawlInterval;
-    private final String entryUrl;
-    private final String crawlHostRegex;
-    private final String crawlPathRegex;
-    private final RobotPolicy robotPolicy;
-
-    private class QueueItem {
-        private final String url;
-        private final int depth;
-
-        public String getUrl() {
-            return url;
-        }
+    private final LinkExtractor linkExtractor;
+    private final ContentExtractor contentExtractor = new ContentExtractor();
 
-        public int getDepth() {
-            return depth;
-        }
-
-        public QueueItem(String url, int depth) {
-            this.url = url;
-            this.depth = depth;
-        }
-    }
+    private final LongAdder fetchedCount;
+    private final LongAdder skippedCount;
+    private final LongAdder erroredCount;
+    private final LongAdder notModifiedTotal;
+    private final LatencyHistogram parseLatency;
 
     private int crawlCount = 0;
-    private final Queue<QueueItem> nextUrlQueue = new LinkedList<>();
+    private int notModifiedCount = 0;
 
     private final BlockingQueue<WikiPage> pageQueue = new LinkedBlockingQueue<>();
     private final WriterThread writer;
@@ -65,30 +55,42 @@ public class CrawlThread extends Thread {
      * Construct a crawler thread with given settings.
      *
      * @param threadId       The associated thread id.
-     * @param visitedUrls    The set of visited urls; the underlying object should be thread-safe.
-     * @param numOfPages     The number of web pages to crawl.
+     * @param frontier       The urls to crawl, shared by all threads.
+     * @param fetcher        The fetcher, to give back the slot of a page once parsed.
+     * @param fetchResults   The fetched pages to parse, shared by all threads.
+     * @param crawledCount   The number of pages crawled by all threads.
+     * @param numOfPages     The number of web pages to crawl, by all threads.
      * @param crawlDepth     The depth of web pages to crawl.
-     * @param crawlInterval  The interval of crawling next page, limiting the access rate (milliseconds).
-     * @param entryUrl       The url of the entry page.
      * @param crawlHostRegex The url to be crawled should be within this host.
      * @param crawlPathRegex The path of the url should start with this prefix.
      * @param jdbcUrl        The JDBC url to access database.
-     * @param robotPolicy    The policy the crawler should obey.
+     * @param metrics        The metrics of the crawl, shared by all threads.
      */
-    public CrawlThread(int threadId, Set<String> visitedUrls,
-                       int numOfPages, int crawlDepth, int crawlInterval,
-                       String entryUrl, String crawlHostRegex, String crawlPathRegex,
-                       String jdbcUrl, RobotPolicy robotPolicy) throws SQLException {
+    public CrawlThread(int threadId, Frontier frontier, Fetcher fetcher,
+                       BlockingQueue<Fetcher.FetchResult> fetchResults, AtomicInteger crawledCount,
+                       int numOfPages, int crawlDepth, String crawlHostRegex, String crawlPathRegex,
+                       String jdbcUrl, MetricsRegistry metrics) throws SQLException {
         this.threadId = threadId;
-        this.visitedUrls = visitedUrls;
+        this.frontier = frontier;
+        this.fetcher = fetcher;
+        this.fetchResults = fetchResults;
+        this.crawledCount = crawledCount;
         this.numOfPages = numOfPages;
         this.crawlDepth = crawlDepth;
-        this.crawlInterval = crawlInterval;
-        this.entryUrl = entryUrl;
-        this.crawlHostRegex = crawlHostRegex;
-        this.crawlPathRegex = crawlPathRegex;
-        this.writer = new WriterThread(threadId, jdbcUrl, pageQueue);
-        this.robotPolicy = robotPolicy;
+        this.linkExtractor = new LinkExtractor(crawlHostRegex, crawlPathRegex);
+        this.writer = new WriterThread(threadId, jdbcUrl, pageQueue, frontier, metrics);
+        this.fetchedCount = metrics.counter("fetched");
+        this.skippedCount = metrics.counter("skipped");
+        this.erroredCount = metrics.counter("errored");
+        this.notModifiedTotal = metrics.counter("not_modified");
+        this.parseLatency = metrics.histogram("parse");
+    }
+
+    /**
+     * Get the number of pages waiting to be written.
+     */
+    public int getPageQueueSize() {
+        return pageQueue.size();
     }
 
     /**
@@ -99,26 +101,66 @@ public class CrawlThread extends Thread {
         writer.setExitEventListener(exitEventListener);
     }
 
-    private void process(QueueItem nextUrl) {
-        Document doc = null;
+    /**
+     * Parse a page fetched, if it was fetched successfully.
+     * @return Whether the page is put into the writing queue.
+     */
+    private boolean process(Fetcher.FetchResult result) {
+        Frontier.QueueItem nextUrl = result.getItem();
         URL actualUrl;
 
+        // Fetched again, but not changed since stored. Nothing to parse.
+        if (result.getStatusCode() == 304) {
+            crawledCount.incrementAndGet();
+            ++notModifiedCount;
+            notModifiedTotal.increment();
+            return false;
+        }
+
+        if (result.getError() != null) {
+            System.out.println("CrawlThread " + threadId + " cannot fetch " + nextUrl.getUrl() + ": " +
+                    result.getError().getMessage());
+            erroredCount.increment();
+            return false;
+        } else if (result.getStatusCode() != 200) {
+            System.out.println("CrawlThread " + threadId + " got HTTP status " + result.getStatusCode() +
+                    " from " + nextUrl.getUrl() + ".");
+            erroredCount.increment();
+            return false;
+        }
+
         try {
-            doc = Jsoup.connect(nextUrl.getUrl()).get();
             // Since Special:Random returns 302, the actual url should be parsed after redirect.
-            actualUrl = new URL(doc.location());
-        } catch (IOException e) {
-            System.out.println("CrawlThread " + threadId + " throws an IOException: " + e.getMessage());
-            if (e instanceof MalformedURLException && doc != null) {
-                System.out.println("CrawlThread " + threadId + " reports a malformed URL: " + doc.location());
-            }
-            return;
+            actualUrl = result.getFinalUri().toURL();
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            System.out.println("CrawlThread " + threadId + " reports a malformed URL: " + result.getFinalUri());
+            erroredCount.increment();
+            return false;
         }
 
+        fetchedCount.increment();
+        long parseAt = System.nanoTime();
+        boolean stored = parse(nextUrl, actualUrl, result);
+        parseLatency.record(System.nanoTime() - parseAt);
+        if (!stored)
+            skippedCount.increment();
+        return stored;
+    }
+
+    /**
+     * Parse a page fetched, and put it into the writing queue if it is an article not crawled before.
+     * @return Whether the page is put into the writing queue.
+     */
+    private boolean parse(Frontier.QueueItem nextUrl, URL actualUrl, Fetcher.FetchResult result) {
+        Document doc = Jsoup.parse(result.getBody(), actualUrl.toString());
+
         // The redirected url may a special page, filter them out first.
-        if (actualUrl.getHost().matches(crawlHostRegex) && actualUrl.getPath().matches(crawlPathRegex)) {
+        if (linkExtractor.accepts(actualUrl)) {
             // Remove the anchor part.
-            visitedUrls.add(actualUrl.getProtocol() + "://" + actualUrl.getHost() + actualUrl.getFile());
+            String visitedUrl = LinkExtractor.prefixOf(actualUrl) + actualUrl.getFile();
+            // A redirect (e.g. from the entry url) may land on a page already crawled or enqueued.
+            if (!visitedUrl.equals(nextUrl.getUrl()) && !frontier.markVisited(visitedUrl))
+                return false;
 
             Element elTitle = doc.getElementById("firstHeading"); // key
             Element elContent = doc.selectFirst("#mw-content-text .mw-parser-output"); // value 1
@@ -128,25 +170,9 @@ public class CrawlThread extends Thread {
             if (elTitle != null && elContent != null && elCategory != null) {
                 String title = elTitle.text().trim();
 
-                // Remove all reference <sup>s.
-                elContent.select("sup[class='reference']").remove();
-                // Remove the `edit` links.
-                elContent.select("span[class='mw-editsection']").remove();
-                // Remove unused tags (table & div).
-                Arrays.asList("table", "div").forEach(tag -> elContent.select(tag).remove());
-                // Remove empty headings with no paragraphs below it.
-                Arrays.asList("h1", "h2", "h3", "h4", "h5", "h6").forEach(
-                        tag -> elContent.select(tag + "+" + tag).stream()
-                                .map(Element::previousElementSibling)
-                                .forEach(Element::remove));
-                // The final content can be now generated.
-                String content = elContent.children().stream()
-                        // We don't need empty elements (that is with no text).
-                        .filter(Element::hasText)
-                        // Map to its un-encoded text & trim
-                        .map(Element::wholeText).map(String::trim)
-                        // Collect back to a full string
-                        .collect(Collectors.joining("\n"));
+                // Remove the references, `edit` links, tables, divs & empty headings, and generate the content.
+                // The links below are extracted from what is left.
+                String content = contentExtractor.extract(elContent);
 
                 // For categories, we want the text in `#mw-normal-catlinks ul > li`
                 List<String> categories = elCategory.select("ul > li").stream()
@@ -159,8 +185,7 @@ public class CrawlThread extends Thread {
                 LocalDateTime lastModify = elLastMod == null ? LocalDateTime.now() : Stream.of(elLastMod)
                         // Something like "This page was last edited on 18 January 2018, at 21:30."
                         .map(el -> {
-                            Pattern pattern = Pattern.compile("edited on ([^,]*), at ([^.]*)");
-                            Matcher matcher = pattern.matcher(el.html());
+                            Matcher matcher = LAST_MODIFY_PATTERN.matcher(el.html());
                             return matcher.find() && matcher.groupCount() == 2 ?
                                     matcher.group(1) + " " + matcher.group(2) : null;
                         }).filter(Objects::nonNull)
@@ -172,109 +197,75 @@ public class CrawlThread extends Thread {
 
                 // We won't store empty page.
                 if (content.isEmpty() || categories.isEmpty())
-                    return;
-
-                // Get all valid `#mw-content-text > a`s.
-                // We want <a> with attribute of href.
-                Supplier<Stream<URL>> linkSupplier = () -> elContent.select("a[href]").stream()
-                        .map(a -> a.attr("href"))
-                        // Map href into URL object
-                        .map(href -> {
-                            try { return new URL(actualUrl, href); }
-                            catch (MalformedURLException e) { return null; }
-                        }).filter(Objects::nonNull)
-                        // We only want the link inside a given host and the path meets some requirement.
-                        .filter(url -> url.getHost().matches(crawlHostRegex) && url.getPath().matches(crawlPathRegex));
-
-                // Save all the outgoing titles.
-                List<String> outLinks = linkSupplier.get().map(URL::getPath)
-                        // Decode URL to UTF-8 first.
-                        .map(url -> {
-                            try { return URLDecoder.decode(url, "UTF-8"); }
-                            catch (UnsupportedEncodingException e) { return null; }
-                        }).filter(Objects::nonNull)
-                        // crawlPathRegex has built-in group, to fetch the title.
-                        .map(url -> {
-                            Pattern pattern = Pattern.compile(crawlPathRegex);
-                            Matcher matcher = pattern.matcher(url);
-                            return matcher.find() && matcher.groupCount() == 1 ? matcher.group(1) : null;
-                        }).filter(Objects::nonNull)
-                        // We save titles, thus replace all _ in the link to space.
-                        .map(dest -> dest.replace('_', ' '))
-                        .distinct().collect(Collectors.toList());
+                    return false;
+
+                // Get all valid `#mw-content-text > a`s, as the outgoing titles & the urls to crawl.
+                LinkExtractor.Links links = linkExtractor.extract(elContent, actualUrl);
+                List<String> outLinks = links.getTitles();
+
+                // Another thread may have crawled the last page meanwhile.
+                if (crawledCount.getAndIncrement() >= numOfPages)
+                    return false;
 
                 // Put into writing queue
-                try { pageQueue.put(new WikiPage(title, content, categories, lastModify, outLinks)); }
+                try { pageQueue.put(new WikiPage(title, content, categories, lastModify, outLinks,
+                        result.getEtag(), result.isFromFrontier() ? nextUrl.getUrl() : null)); }
                 // Oops! Something wrong...
-                catch (InterruptedException e) { return; }
+                catch (InterruptedException e) { return false; }
 
                 // Update the crawled pages count.
                 ++crawlCount;
 
                 // Hit the depth limit?
                 if (nextUrl.getDepth() >= crawlDepth)
-                    return;
-
-                // Reconstruct the URL, remove the anchor part.
-                // There may be some duplicate URLs after this processing.
-                linkSupplier.get().map(url -> url.getProtocol() + "://" + url.getHost() + url.getFile())
-                        // Check if the URL has already stored in the stack.
-                        .distinct().filter(url -> !visitedUrls.contains(url))
-                        // Push into queue.
-                        .forEachOrdered(url -> nextUrlQueue.add(new QueueItem(url, nextUrl.getDepth() + 1)));
+                    return true;
+
+                // The frontier drops the URLs already seen.
+                links.getUrls().forEach(url -> frontier.offer(url, nextUrl.getDepth() + 1));
+                return true;
             }
         }
+        return false;
     }
 
     private void reportProgress(boolean summary, LocalDateTime startAt) {
-        System.out.format("%sCrawlThread %d crawled %d pages, %.2f%% completed. Elapsed time: %s.%n",
-                summary ? "Summary: " : "", threadId, crawlCount, crawlCount * 100.0f / numOfPages,
-                Utility.elapsedTime(startAt, LocalDateTime.now()));
+        int totalCount = Math.min(crawledCount.get(), numOfPages);
+        System.out.format("%sCrawlThread %d crawled %d pages%s, %.2f%% completed in total. Elapsed time: %s.%n",
+                summary ? "Summary: " : "", threadId, crawlCount,
+                notModifiedCount > 0 ? " (" + notModifiedCount + " not modified)" : "",
+                totalCount * 100.0f / numOfPages, Utility.elapsedTime(startAt, LocalDateTime.now()));
     }
 
     @Override
     public void run() {
         LocalDateTime startAt = LocalDateTime.now();
-        System.out.println("CrawlThread " + threadId + " started at " + startAt.toLocalTime() + ". " +
-                "Pages to crawl: " + numOfPages + ".");
+        System.out.println("CrawlThread " + threadId + " started at " + startAt.toLocalTime() + ".");
 
         writer.start();
-        nextUrlQueue.add(new QueueItem(entryUrl, 0));
 
         // Job finished? or something wrong with writer?
-        while (crawlCount < numOfPages && !writer.isInterrupted()) {
-            // nextUrlQueue may be empty, since the crawl depth limitation.
-            // If so, crawl the entry url again. (Entry url is never put into visitedUrls)
-            QueueItem nextUrl = nextUrlQueue.isEmpty() ? new QueueItem(entryUrl, 0) : nextUrlQueue.remove();
-
-            // Check if url is restricted by some policies.
+        while (!writer.isInterrupted()) {
+            Fetcher.FetchResult result;
+            try { result = fetchResults.take(); }
+            catch (InterruptedException e) { break; }
+            if (result == Fetcher.FetchResult.END)
+                break;
+
+            int lastCount = crawlCount;
+            boolean queued = false;
             try {
-                if (!robotPolicy.testURL(new URL(nextUrl.getUrl()))) {
-                    // Entry url? No need to run the crawler.
-                    if (nextUrl.getUrl().equals(entryUrl)) {
-                        System.out.println("CrawlThread " + threadId + " reported the entry url (" +
-                                entryUrl + ") is disallowed. Exiting...");
-                        break;
-                    } else {
-                        continue;
-                    }
-                }
-            } catch (MalformedURLException e) {
-                // ignored
+                queued = process(result);
+            } finally {
+                // Each url is enqueued only once, so it will not be crawled again.
+                // A page queued is marked done by the writer, once it is committed.
+                if (result.isFromFrontier() && !queued)
+                    frontier.done(result.getItem().getUrl());
+                fetcher.release();
             }
 
-            if (!visitedUrls.contains(nextUrl.getUrl())) {
-                process(nextUrl);
-
-                // Report crawling progress.
-                if (crawlCount > 0 && crawlCount % Math.min(numOfPages, WriterThread.BATCH_WRITE_COUNT) == 0) {
-                    reportProgress(false, startAt);
-                }
-
-                // Be polite.
-                try { Thread.sleep(crawlInterval); }
-                // We don't care if it is interrupted
-                catch (InterruptedException e) { }
+            // Report crawling progress.
+            if (crawlCount > lastCount && crawlCount % WriterThread.BATCH_WRITE_COUNT == 0) {
+                reportProgress(false, startAt);
             }
         }
 
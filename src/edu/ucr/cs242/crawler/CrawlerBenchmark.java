@@ -0,0 +1,551 @@
+package edu.ucr.cs242.crawler;
+
+import edu.ucr.cs242.Utility;
+import org.apache.commons.cli.*;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compare the parts of the crawler with the way they were done formerly, without crawling.
+ * The former implementations live here, and only here, as the references to compare against.
+ */
+public class CrawlerBenchmark {
+    /**
+     * Run an operation over all urls by a number of threads, each taking every n-th url.
+     * @return The number of urls the operation returns true for.
+     */
+    private static long runParallel(String[] urls, int numOfThreads, Predicate<String> operation) {
+        Thread[] threads = new Thread[numOfThreads];
+        LongAdder trueCount = new LongAdder();
+
+        for (int i = 0; i < numOfThreads; i++) {
+            int threadId = i;
+            threads[i] = new Thread(() -> {
+                for (int j = threadId; j < urls.length; j += numOfThreads) {
+                    if (operation.test(urls[j]))
+                        trueCount.increment();
+                }
+            });
+            threads[i].start();
+        }
+
+        Utility.waitThreads(threads);
+        return trueCount.sum();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        // Twice, so the garbage of finalizers is gone as well.
+        runtime.gc();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Compare the visited sets, on synthetic Wikipedia urls: add, contains (present & absent) throughput,
+     * and the heap taken. Each set is sized for exactly the urls added.
+     * @param numOfUrls     The number of urls to add.
+     * @param numOfThreads  The number of threads operating on a set at once.
+     * @param falsePositive The false positive rate of the Bloom filter.
+     */
+    public static void benchmarkVisitedSets(int numOfUrls, int numOfThreads, double falsePositive) {
+        Random random = new Random(242);
+        String[] presentUrls = new String[numOfUrls];
+        String[] absentUrls = new String[numOfUrls];
+        for (int i = 0; i < numOfUrls; i++) {
+            presentUrls[i] = "https://en.wikipedia.org/wiki/" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36) +
+                    "_(" + i + ")";
+            absentUrls[i] = "https://en.wikipedia.org/wiki/" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36) +
+                    "_[" + i + "]";
+        }
+
+        System.out.println("Visited set benchmark started at " + LocalDateTime.now().toLocalTime() + ". " +
+                "Urls: " + numOfUrls + ". Threads: " + numOfThreads + ".");
+        for (String type : new String[] { "hash", "fingerprint", "bloom" }) {
+            long heapBefore = usedHeap();
+            VisitedSet visitedSet = VisitedSet.create(type, numOfUrls, falsePositive);
+
+            long addAt = System.nanoTime();
+            // A copy, as a crawled url would be, so the hash set is charged for the strings it keeps.
+            long added = runParallel(presentUrls, numOfThreads, url -> visitedSet.add(new String(url.toCharArray())));
+            long addNanos = System.nanoTime() - addAt;
+            long heap = usedHeap() - heapBefore;
+
+            long presentAt = System.nanoTime();
+            long present = runParallel(presentUrls, numOfThreads, visitedSet::contains);
+            long presentNanos = System.nanoTime() - presentAt;
+
+            long absentAt = System.nanoTime();
+            long falsePositives = runParallel(absentUrls, numOfThreads, visitedSet::contains);
+            long absentNanos = System.nanoTime() - absentAt;
+
+            System.out.format("%-12s add %6.2f M/s, contains %6.2f M/s (present) %6.2f M/s (absent), " +
+                            "heap %7.1f MB (%5.1f bytes/url), added %d, found %d, false positives %.4f%%.%n",
+                    visitedSet, numOfUrls * 1e3 / addNanos, numOfUrls * 1e3 / presentNanos,
+                    numOfUrls * 1e3 / absentNanos, heap / 1048576.0, (double) heap / numOfUrls,
+                    added, present, falsePositives * 100.0 / numOfUrls);
+        }
+    }
+
+    /**
+     * Extract the links the former way: twice over the hrefs, each resolved by URL & checked by String.matches,
+     * with the path regex compiled for each title.
+     */
+    private static LinkExtractor.Links extractLinksFormer(Element content, URL base, String crawlHostRegex,
+                                                          String crawlPathRegex) {
+        Supplier<Stream<URL>> linkSupplier = () -> content.select("a[href]").stream()
+                .map(a -> a.attr("href"))
+                .map(href -> {
+                    try { return new URL(base, href); }
+                    catch (MalformedURLException e) { return null; }
+                }).filter(Objects::nonNull)
+                .filter(url -> url.getHost().matches(crawlHostRegex) && url.getPath().matches(crawlPathRegex));
+
+        List<String> titles = linkSupplier.get().map(URL::getPath)
+                .map(url -> {
+                    try { return URLDecoder.decode(url, "UTF-8"); }
+                    catch (UnsupportedEncodingException | IllegalArgumentException e) { return null; }
+                }).filter(Objects::nonNull)
+                .map(url -> {
+                    Pattern pattern = Pattern.compile(crawlPathRegex);
+                    Matcher matcher = pattern.matcher(url);
+                    return matcher.find() && matcher.groupCount() == 1 ? matcher.group(1) : null;
+                }).filter(Objects::nonNull)
+                .map(dest -> dest.replace('_', ' '))
+                .distinct().collect(Collectors.toList());
+
+        List<String> urls = linkSupplier.get().map(url -> url.getProtocol() + "://" + url.getHost() + url.getFile())
+                .distinct().collect(Collectors.toList());
+
+        return new LinkExtractor.Links(titles, urls);
+    }
+
+    /**
+     * Extract the content the former way, a select() sweep over the element for each thing to remove.
+     */
+    private static String extractContentFormer(Element elContent) {
+        // Remove all reference <sup>s.
+        elContent.select("sup[class='reference']").remove();
+        // Remove the `edit` links.
+        elContent.select("span[class='mw-editsection']").remove();
+        // Remove unused tags (table & div).
+        Arrays.asList("table", "div").forEach(tag -> elContent.select(tag).remove());
+        // Remove empty headings with no paragraphs below it.
+        Arrays.asList("h1", "h2", "h3", "h4", "h5", "h6").forEach(
+                tag -> elContent.select(tag + "+" + tag).stream()
+                        .map(Element::previousElementSibling)
+                        .forEach(Element::remove));
+        // The final content can be now generated.
+        return elContent.children().stream()
+                // We don't need empty elements (that is with no text).
+                .filter(Element::hasText)
+                // Map to its un-encoded text & trim
+                .map(Element::wholeText).map(String::trim)
+                // Collect back to a full string
+                .collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * Check if a path is allowed the former way: the first rule in the file with the path as a prefix decides,
+     * and `*` & `$` are taken literally.
+     */
+    private static boolean isAllowedLinear(RobotRules rules, String path) {
+        return rules.getRules().entrySet().stream()
+                .filter(p -> path.startsWith(p.getKey()))
+                .map(Map.Entry::getValue)
+                .findFirst().orElse(true);
+    }
+
+    /**
+     * Read saved article HTML. The url of a page is its canonical link, or the entry url's host
+     * followed by /wiki/ and the file name.
+     * @param htmlPath A saved article, or a directory of them.
+     * @param entryUrl The url of the entry page.
+     * @param htmls    Receives the HTML of the articles with content.
+     * @param bases    Receives the urls of the articles with content.
+     */
+    private static void readArticles(String htmlPath, String entryUrl, List<String> htmls, List<URL> bases)
+            throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(Paths.get(htmlPath))) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        for (Path file : files) {
+            String name = file.getFileName().toString().replaceFirst("\\.html?$", "");
+            URL base = new URL(new URL(entryUrl), "/wiki/" + name);
+            String html = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            Document doc = Jsoup.parse(html, base.toString());
+
+            Element canonical = doc.selectFirst("link[rel=canonical]");
+            if (canonical != null && !canonical.absUrl("href").isEmpty())
+                base = new URL(canonical.absUrl("href"));
+            if (doc.selectFirst("#mw-content-text .mw-parser-output") != null) {
+                htmls.add(html);
+                bases.add(base);
+            }
+        }
+    }
+
+    /**
+     * Compare the link extraction with the former one, on saved article HTML: pages per second, and whether
+     * the two find the same links.
+     * @param htmlPath       A saved article, or a directory of them.
+     * @param entryUrl       The url of the entry page.
+     * @param crawlHostRegex The url to be crawled should be within this host.
+     * @param crawlPathRegex The path of the url should start with this prefix.
+     */
+    public static void benchmarkLinks(String htmlPath, String entryUrl, String crawlHostRegex,
+                                      String crawlPathRegex) throws IOException {
+        final int WARMUP_ROUNDS = 20;
+        final int MEASURE_ROUNDS = 50;
+
+        List<String> htmls = new ArrayList<>();
+        List<URL> bases = new ArrayList<>();
+        readArticles(htmlPath, entryUrl, htmls, bases);
+        List<Element> contents = new ArrayList<>();
+        for (int i = 0; i < htmls.size(); i++) {
+            contents.add(Jsoup.parse(htmls.get(i), bases.get(i).toString())
+                    .selectFirst("#mw-content-text .mw-parser-output"));
+        }
+
+        System.out.println("Link extraction benchmark started at " + LocalDateTime.now().toLocalTime() + ". " +
+                "Pages: " + contents.size() + ".");
+        if (contents.isEmpty())
+            return;
+
+        LinkExtractor extractor = new LinkExtractor(crawlHostRegex, crawlPathRegex);
+        long links = 0;
+        int differed = 0;
+        for (int i = 0; i < contents.size(); i++) {
+            LinkExtractor.Links current = extractor.extract(contents.get(i), bases.get(i));
+            LinkExtractor.Links former = extractLinksFormer(contents.get(i), bases.get(i),
+                    crawlHostRegex, crawlPathRegex);
+            links += current.getUrls().size();
+            if (!current.getTitles().equals(former.getTitles()) || !current.getUrls().equals(former.getUrls()))
+                ++differed;
+        }
+
+        long[] nanos = new long[2];
+        for (int method = 0; method < 2; method++) {
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+                long startAt = System.nanoTime();
+                for (int i = 0; i < contents.size(); i++) {
+                    if (method == 0)
+                        extractLinksFormer(contents.get(i), bases.get(i), crawlHostRegex, crawlPathRegex);
+                    else
+                        extractor.extract(contents.get(i), bases.get(i));
+                }
+                if (round >= WARMUP_ROUNDS)
+                    nanos[method] += System.nanoTime() - startAt;
+            }
+        }
+
+        long pages = (long) contents.size() * MEASURE_ROUNDS;
+        System.out.format("former  %10.1f pages/s, %8.1f us/page.%n", pages * 1e9 / nanos[0], nanos[0] / 1e3 / pages);
+        System.out.format("current %10.1f pages/s, %8.1f us/page.%n", pages * 1e9 / nanos[1], nanos[1] / 1e3 / pages);
+        System.out.format("Summary: current is %.1fx as fast, over %d links; %d pages differ.%n",
+                (double) nanos[0] / nanos[1], links, differed);
+    }
+
+    /**
+     * Compare the parsing & content extraction with the former select() sweeps, on saved article HTML:
+     * the time per page of parsing & of extracting each way, and whether the two contents match.
+     * @param htmlPath A saved article, or a directory of them.
+     * @param entryUrl The url of the entry page.
+     */
+    public static void benchmarkContent(String htmlPath, String entryUrl) throws IOException {
+        final int WARMUP_ROUNDS = 10;
+        final int MEASURE_ROUNDS = 30;
+
+        List<String> htmls = new ArrayList<>();
+        List<URL> bases = new ArrayList<>();
+        readArticles(htmlPath, entryUrl, htmls, bases);
+
+        System.out.println("Content extraction benchmark started at " + LocalDateTime.now().toLocalTime() + ". " +
+                "Pages: " + htmls.size() + ".");
+        if (htmls.isEmpty())
+            return;
+
+        ContentExtractor extractor = new ContentExtractor();
+        int differed = 0;
+        for (int i = 0; i < htmls.size(); i++) {
+            String former = extractContentFormer(Jsoup.parse(htmls.get(i), bases.get(i).toString())
+                    .selectFirst("#mw-content-text .mw-parser-output"));
+            String current = extractor.extract(Jsoup.parse(htmls.get(i), bases.get(i).toString())
+                    .selectFirst("#mw-content-text .mw-parser-output"));
+            if (!former.equals(current))
+                ++differed;
+        }
+
+        // Parsing & the former extraction, then parsing & the current one, timed apart.
+        long[] parseNanos = new long[2];
+        long[] extractNanos = new long[2];
+        for (int method = 0; method < 2; method++) {
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+                for (int i = 0; i < htmls.size(); i++) {
+                    long parseAt = System.nanoTime();
+                    Element content = Jsoup.parse(htmls.get(i), bases.get(i).toString())
+                            .selectFirst("#mw-content-text .mw-parser-output");
+                    long extractAt = System.nanoTime();
+                    if (method == 0)
+                        extractContentFormer(content);
+                    else
+                        extractor.extract(content);
+
+                    if (round >= WARMUP_ROUNDS) {
+                        parseNanos[method] += extractAt - parseAt;
+                        extractNanos[method] += System.nanoTime() - extractAt;
+                    }
+                }
+            }
+        }
+
+        long pages = (long) htmls.size() * MEASURE_ROUNDS;
+        System.out.format("former  parse %8.1f us/page, extract %8.1f us/page, total %8.1f us/page.%n",
+                parseNanos[0] / 1e3 / pages, extractNanos[0] / 1e3 / pages,
+                (parseNanos[0] + extractNanos[0]) / 1e3 / pages);
+        System.out.format("current parse %8.1f us/page, extract %8.1f us/page, total %8.1f us/page.%n",
+                parseNanos[1] / 1e3 / pages, extractNanos[1] / 1e3 / pages,
+                (parseNanos[1] + extractNanos[1]) / 1e3 / pages);
+        System.out.format("Summary: extract is %.1fx as fast, parse + extract %.1fx; %d pages differ.%n",
+                (double) extractNanos[0] / extractNanos[1],
+                (double) (parseNanos[0] + extractNanos[0]) / (parseNanos[1] + extractNanos[1]), differed);
+    }
+
+    /**
+     * Compare the compiled robots.txt rules with the former linear scan, on paths made up of the rules themselves
+     * & synthetic Wikipedia articles: lookups per second, and how many paths the two disagree on.
+     * @param robotsFile The robots.txt to compile, for our user agent.
+     * @param numOfPaths The number of distinct paths, each looked up LOOKUP_ROUNDS times.
+     */
+    public static void benchmarkRobots(String robotsFile, int numOfPaths) throws IOException {
+        final int LOOKUP_ROUNDS = 10;
+
+        RobotRules rules;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(robotsFile))) {
+            rules = new RobotPolicy(WikiCrawler.USER_AGENT).compile(reader);
+        }
+
+        // Half of the paths hit a rule (made concrete, with something after), half are plain articles.
+        Random random = new Random(242);
+        List<String> patterns = new ArrayList<>(rules.getRules().keySet());
+        String[] paths = new String[numOfPaths];
+        for (int i = 0; i < numOfPaths; i++) {
+            String suffix = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+            paths[i] = i % 2 == 0 && !patterns.isEmpty() ?
+                    patterns.get(random.nextInt(patterns.size())).replace("*", suffix).replace("$", "") +
+                            (random.nextBoolean() ? suffix : "") :
+                    "/wiki/" + suffix;
+        }
+
+        System.out.println("Robots benchmark started at " + LocalDateTime.now().toLocalTime() + ". " +
+                "Rules: " + rules.size() + ". Paths: " + numOfPaths + ".");
+
+        long[] allowed = new long[2];
+        long[] nanos = new long[2];
+        for (int method = 0; method < 2; method++) {
+            // Once to warm up, then timed.
+            for (int round = 0; round <= LOOKUP_ROUNDS; round++) {
+                long startAt = System.nanoTime();
+                long count = 0;
+                for (String path : paths) {
+                    if (method == 0 ? isAllowedLinear(rules, path) : rules.isAllowed(path))
+                        ++count;
+                }
+                if (round > 0) {
+                    nanos[method] += System.nanoTime() - startAt;
+                    allowed[method] = count;
+                }
+            }
+        }
+
+        long disagreed = Arrays.stream(paths).filter(path -> rules.isAllowed(path) != isAllowedLinear(rules, path))
+                .count();
+        long lookups = (long) numOfPaths * LOOKUP_ROUNDS;
+        System.out.format("linear   %8.3f M lookups/s, allowed %d.%n", lookups * 1e3 / nanos[0], allowed[0]);
+        System.out.format("compiled %8.3f M lookups/s, allowed %d.%n", lookups * 1e3 / nanos[1], allowed[1]);
+        System.out.format("Summary: compiled is %.1fx as fast, and decides %d paths differently " +
+                "(longest match, `*` & `$`).%n", (double) nanos[0] / nanos[1], disagreed);
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: benchmark [options]");
+        System.out.println("use -h for a list of possible options");
+        System.exit(1);
+    }
+
+    private static void printMessage(String message) {
+        System.out.println("benchmark: " + message);
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("benchmark [options]", options);
+        System.out.println();
+    }
+
+    public static void main(String[] args) {
+        // Default values, the same as the crawler's.
+        final String ENTRY_URL = "https://en.wikipedia.org/wiki/Special:Random";
+        final String CRAWL_HOST_REGEX = "^en.wikipedia.org$";
+        final String CRAWL_PATH_REGEX = "^/wiki/([^:]*)$";
+        final int ROBOTS_PATHS = 100000;
+        final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+        final double FALSE_POSITIVE = 0.001;
+
+        Options options = new Options();
+        options.addOption(Option.builder("V")
+                        .longOpt("visited")
+                        .argName("NUM OF URLS")
+                        .desc("compare the memory & throughput of the visited sets on this many urls")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("t")
+                        .longOpt("threads")
+                        .argName("NUM OF THREADS")
+                        .desc("the number of threads operating on a visited set at once " +
+                                "(default: " + NUMBER_OF_THREADS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("F")
+                        .longOpt("false-positive")
+                        .argName("RATE")
+                        .desc("the false positive rate of the bloom visited set (default: " + FALSE_POSITIVE + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("L")
+                        .longOpt("links")
+                        .argName("HTML PATH")
+                        .desc("compare the speed of the link extraction with the former one, on the saved " +
+                                "article (or directory of articles)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("C")
+                        .longOpt("content")
+                        .argName("HTML PATH")
+                        .desc("compare the time of parsing & extracting the content with the former way, " +
+                                "on the saved article (or directory of articles)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("r")
+                        .longOpt("robots")
+                        .argName("ROBOTS FILE")
+                        .desc("compare the lookups per second of the compiled robots.txt rules in this file " +
+                                "with the former linear scan")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("u")
+                        .longOpt("entry-url")
+                        .argName("ENTRY URL")
+                        .desc("the url of the entry page, whose host the saved articles are taken from " +
+                                "(default: " + ENTRY_URL + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("H")
+                        .longOpt("host-regex")
+                        .argName("HOST REGEX")
+                        .desc("the url to be crawled should be within this host (default: " + CRAWL_HOST_REGEX + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("P")
+                        .longOpt("path-regex")
+                        .argName("PATH REGEX")
+                        .desc("the path of the url should start with this prefix (default: " + CRAWL_PATH_REGEX + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("l")
+                        .longOpt("log-output")
+                        .argName("FILE NAME")
+                        .desc("the file to write logs into (default: STDOUT)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption("h", "help", false, "print a synopsis of standard options");
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+
+            if (cmd.hasOption("h")) {
+                printHelp(options);
+                System.exit(0);
+            }
+
+            if (!cmd.hasOption("visited") && !cmd.hasOption("links") && !cmd.hasOption("content") &&
+                    !cmd.hasOption("robots")) {
+                printMessage("nothing to benchmark");
+                printUsage();
+            }
+
+            String logOutput = cmd.getOptionValue("log-output");
+            if (!Utility.openOutputLog(logOutput)) {
+                printMessage("invalid log file path");
+                printUsage();
+            }
+
+            try {
+                // Test if valid url
+                String entryUrl = new URL(cmd.getOptionValue("entry-url", ENTRY_URL)).toString();
+                String crawlHostRegex = cmd.getOptionValue("host-regex", CRAWL_HOST_REGEX);
+                String crawlPathRegex = cmd.getOptionValue("path-regex", CRAWL_PATH_REGEX);
+
+                int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                double falsePositive = Double.parseDouble(cmd.getOptionValue("false-positive",
+                        String.valueOf(FALSE_POSITIVE)));
+
+                if (cmd.hasOption("visited")) {
+                    benchmarkVisitedSets(Integer.parseInt(cmd.getOptionValue("visited")), numOfThreads,
+                            falsePositive);
+                } else if (cmd.hasOption("robots")) {
+                    try { benchmarkRobots(cmd.getOptionValue("robots"), ROBOTS_PATHS); }
+                    catch (IOException e) { printMessage("cannot read robots file (" + e.getMessage() + ")"); }
+                } else if (cmd.hasOption("content")) {
+                    try { benchmarkContent(cmd.getOptionValue("content"), entryUrl); }
+                    catch (IOException e) { printMessage("cannot read HTML (" + e.getMessage() + ")"); }
+                } else {
+                    try { benchmarkLinks(cmd.getOptionValue("links"), entryUrl, crawlHostRegex, crawlPathRegex); }
+                    catch (IOException e) { printMessage("cannot read HTML (" + e.getMessage() + ")"); }
+                }
+            } catch (IllegalArgumentException | MalformedURLException e) {
+                printMessage("invalid option(s)");
+                printHelp(options);
+                System.exit(1);
+            }
+        } catch (ParseException e) {
+            // Lower the first letter, which as default is an upper letter.
+            printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
+            printHelp(options);
+            System.exit(1);
+        }
+    }
+}
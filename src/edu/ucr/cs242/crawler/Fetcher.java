@@ -0,0 +1,172 @@
+package edu.ucr.cs242.crawler;
+
+import edu.ucr.cs242.LatencyHistogram;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fetch stage of the crawler. Many requests are in flight on a page source (the web, or a replay),
+ * while the parsing is left to the crawl threads. Each request holds a slot, which is given back once its page
+ * is parsed, so the slots bound both the requests in flight and the pages waiting to be parsed.
+ * The rate of requests is up to the HostScheduler.
+ */
+public class Fetcher {
+    /**
+     * A fetched page, or the failure of fetching it.
+     */
+    public static class FetchResult {
+        /**
+         * The end-of-stream marker, one for each crawl thread.
+         */
+        public static final FetchResult END = new FetchResult(null, false, null, 0, null, null, null);
+
+        private final Frontier.QueueItem item;
+        private final boolean fromFrontier;
+        private final URI finalUri;
+        private final int statusCode;
+        private final String body;
+        private final String etag;
+        private final Throwable error;
+
+        public Frontier.QueueItem getItem() {
+            return item;
+        }
+
+        public boolean isFromFrontier() {
+            return fromFrontier;
+        }
+
+        public URI getFinalUri() {
+            return finalUri;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * Construct a fetch result.
+         * @param item         The url requested.
+         * @param fromFrontier Whether the url was taken from the frontier, rather than being the entry url.
+         * @param finalUri     The url after redirects.
+         * @param statusCode   The HTTP status code.
+         * @param body         The response body.
+         * @param etag         The ETag of the response (null if none).
+         * @param error        The failure, if the request did not complete (null otherwise).
+         */
+        public FetchResult(Frontier.QueueItem item, boolean fromFrontier, URI finalUri, int statusCode, String body,
+                           String etag, Throwable error) {
+            this.item = item;
+            this.fromFrontier = fromFrontier;
+            this.finalUri = finalUri;
+            this.statusCode = statusCode;
+            this.body = body;
+            this.etag = etag;
+            this.error = error;
+        }
+    }
+
+    private final PageSource source;
+    private final int maxInFlight;
+    private final Semaphore slots;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Construct a fetcher.
+     * @param maxInFlight The maximum number of pages being fetched or waiting to be parsed.
+     * @param source      Where the pages come from.
+     */
+    public Fetcher(int maxInFlight, PageSource source) {
+        this.maxInFlight = maxInFlight;
+        this.source = source;
+        this.slots = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Get the latency of the fetches completed, from the request to the page got (or the failure).
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Wait for a free slot.
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of timeout.
+     * @return Whether a slot is taken.
+     */
+    public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return slots.tryAcquire(timeout, unit);
+    }
+
+    /**
+     * Give back a slot, once its page is parsed or nothing was fetched in it.
+     */
+    public void release() {
+        slots.release();
+    }
+
+    /**
+     * Get the number of pages being fetched or waiting to be parsed.
+     */
+    public int getInFlight() {
+        return maxInFlight - slots.availablePermits();
+    }
+
+    /**
+     * Wait until all slots are back, that is all pages fetched are parsed.
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of timeout.
+     * @return Whether nothing is in flight.
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!slots.tryAcquire(maxInFlight, timeout, unit))
+            return false;
+        slots.release(maxInFlight);
+        return true;
+    }
+
+    /**
+     * Start fetching a url, in a slot taken by acquire().
+     * @param item         The url to fetch.
+     * @param fromFrontier Whether the url was taken from the frontier.
+     * @param results      The queue to put the result into, once the page arrives or the request fails.
+     */
+    public void fetch(Frontier.QueueItem item, boolean fromFrontier, BlockingQueue<FetchResult> results) {
+        fetch(item, fromFrontier, Collections.emptyMap(), results);
+    }
+
+    /**
+     * Start fetching a url with extra request headers, e.g. the validators of a conditional GET.
+     * @param item         The url to fetch.
+     * @param fromFrontier Whether the url was taken from the frontier.
+     * @param headers      The extra headers.
+     * @param results      The queue to put the result into, once the page arrives or the request fails.
+     */
+    public void fetch(Frontier.QueueItem item, boolean fromFrontier, Map<String, String> headers,
+                      BlockingQueue<FetchResult> results) {
+        long startAt = System.nanoTime();
+        // Unbounded queue, so the source's threads never block; the slots bound it anyway.
+        source.fetch(item, fromFrontier, headers, result -> {
+            latency.record(System.nanoTime() - startAt);
+            results.add(result);
+        });
+    }
+}
@@ -0,0 +1,148 @@
+package edu.ucr.cs242.crawler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The 64-bit fingerprints of urls in an open-addressing table with linear probing, 8 bytes per slot.
+ * Adds CAS into the table under the read lock, shared by all of them, so that a fingerprint is never inserted
+ * into a table being copied, and reported added twice. Lookups are lock-free: they probe under an optimistic stamp,
+ * and retry if the table was grown meanwhile. Growing takes the write lock, which is rare since the table doubles
+ * each time.
+ */
+public class FingerprintVisitedSet implements VisitedSet {
+    /**
+     * The table grows once it is this full.
+     */
+    public static final double LOAD_FACTOR = 0.6;
+    /**
+     * The fingerprint marking an empty slot. A url hashing to it is stored as REPLACEMENT instead.
+     */
+    private static final long EMPTY = 0;
+    private static final long REPLACEMENT = 1;
+
+    private final StampedLock resizeLock = new StampedLock();
+    private final LongAdder size = new LongAdder();
+    private volatile AtomicLongArray table;
+    private volatile long threshold;
+
+    /**
+     * Construct a set.
+     * @param expectedSize The expected number of urls, to size the table up front.
+     */
+    public FingerprintVisitedSet(long expectedSize) {
+        long capacity = Long.highestOneBit(Math.max((long) (expectedSize / LOAD_FACTOR), 16) - 1) << 1;
+        if (capacity > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("expected size too large: " + expectedSize);
+
+        this.table = new AtomicLongArray((int) capacity);
+        this.threshold = (long) (capacity * LOAD_FACTOR);
+    }
+
+    private static long nonEmpty(long fingerprint) {
+        return fingerprint == EMPTY ? REPLACEMENT : fingerprint;
+    }
+
+    /**
+     * Probe for a fingerprint, inserting it into the first empty slot if requested.
+     * @return 1 if inserted, 0 if present, -1 if absent (and not inserted).
+     */
+    private static int probe(AtomicLongArray table, long fingerprint, boolean insert) {
+        int mask = table.length() - 1;
+        for (int slot = (int) (fingerprint >>> 32) & mask; ; slot = (slot + 1) & mask) {
+            long current = table.get(slot);
+            if (current == fingerprint)
+                return 0;
+            if (current == EMPTY) {
+                if (!insert)
+                    return -1;
+                if (table.compareAndSet(slot, EMPTY, fingerprint))
+                    return 1;
+                // Lost the race for this slot; it may have been taken by the same fingerprint.
+                if (table.get(slot) == fingerprint)
+                    return 0;
+            }
+        }
+    }
+
+    private void grow(AtomicLongArray full) {
+        long stamp = resizeLock.writeLock();
+        try {
+            // Someone else has grown it.
+            if (table != full)
+                return;
+
+            AtomicLongArray grown = new AtomicLongArray(full.length() * 2);
+            for (int i = 0; i < full.length(); i++) {
+                long fingerprint = full.get(i);
+                if (fingerprint != EMPTY)
+                    probe(grown, fingerprint, true);
+            }
+            threshold = (long) (grown.length() * LOAD_FACTOR);
+            table = grown;
+        } finally {
+            resizeLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean add(String url) {
+        return addFingerprint(VisitedSet.fingerprint(url));
+    }
+
+    @Override
+    public boolean addFingerprint(long urlFingerprint) {
+        long fingerprint = nonEmpty(urlFingerprint);
+        AtomicLongArray current;
+        boolean added;
+
+        long stamp = resizeLock.readLock();
+        try {
+            current = table;
+            added = probe(current, fingerprint, true) == 1;
+        } finally {
+            resizeLock.unlockRead(stamp);
+        }
+
+        if (added) {
+            size.increment();
+            if (size.sum() > threshold)
+                grow(current);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        long fingerprint = nonEmpty(VisitedSet.fingerprint(url));
+
+        while (true) {
+            long stamp = resizeLock.tryOptimisticRead();
+            AtomicLongArray current = table;
+            if (stamp != 0) {
+                int result = probe(current, fingerprint, false);
+                if (resizeLock.validate(stamp))
+                    return result == 0;
+            } else {
+                stamp = resizeLock.readLock();
+                resizeLock.unlockRead(stamp);
+            }
+        }
+    }
+
+    @Override
+    public long size() {
+        return size.sum();
+    }
+
+    @Override
+    public long memoryUsage() {
+        return table.length() * 8L;
+    }
+
+    @Override
+    public String toString() {
+        return "fingerprint";
+    }
+}
@@ -0,0 +1,129 @@
+package edu.ucr.cs242.crawler;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The urls waiting to be crawled, in a lock-free FIFO queue.
+ * The crawl threads offer the links they find concurrently, and the dispatcher alone polls them for fetching.
+ * A url is enqueued at most once over the whole crawl.
+ */
+public class Frontier {
+    public static class QueueItem {
+        private final String url;
+        private final int depth;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public QueueItem(String url, int depth) {
+            this.url = url;
+            this.depth = depth;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<QueueItem> queue = new ConcurrentLinkedQueue<>();
+    private final VisitedSet seenUrls;
+    private final CrawlState state;
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final LongAdder polledCount = new LongAdder();
+
+    /**
+     * Construct a frontier.
+     * @param seenUrls The urls ever enqueued or crawled.
+     * @param state    The state to log the frontier into (null for not persisted).
+     */
+    public Frontier(VisitedSet seenUrls, CrawlState state) {
+        this.seenUrls = seenUrls;
+        this.state = state;
+    }
+
+    /**
+     * Restore the visited urls, and the urls not yet crawled, from the last checkpoint of the state.
+     */
+    public void resume() throws IOException {
+        if (state == null || !state.isResumed())
+            return;
+
+        state.replay(seenUrls, (url, depth) -> {
+            queue.add(new QueueItem(url, depth));
+            enqueuedCount.increment();
+        });
+    }
+
+    /**
+     * Enqueue a url, unless it has been seen before.
+     * @param url   The url, without the anchor part.
+     * @param depth The depth of the url.
+     * @return Whether the url is enqueued.
+     */
+    public boolean offer(String url, int depth) {
+        if (!seenUrls.add(url))
+            return false;
+
+        // The frontier record goes first: if the process dies in between, the url is enqueued twice, not lost.
+        if (state != null) {
+            state.logEnqueued(url, depth);
+            state.logVisited(url);
+        }
+
+        queue.add(new QueueItem(url, depth));
+        enqueuedCount.increment();
+        return true;
+    }
+
+    /**
+     * Record a url as crawled, without enqueuing it, e.g. where a redirect lands.
+     * @param url The url, without the anchor part.
+     * @return Whether the url has not been seen before.
+     */
+    public boolean markVisited(String url) {
+        if (!seenUrls.add(url))
+            return false;
+
+        if (state != null)
+            state.logVisited(url);
+        return true;
+    }
+
+    /**
+     * Record a url taken from the frontier as crawled (or failed), so it is not crawled again after a resume.
+     * A page stored is only recorded once its write is committed, otherwise it is lost if the process dies.
+     * @param url The url of an item returned by poll().
+     */
+    public void done(String url) {
+        if (state != null)
+            state.logDone(url);
+    }
+
+    /**
+     * Take the next url, the earliest enqueued.
+     * @return The next url, or null if the frontier is empty.
+     */
+    public QueueItem poll() {
+        QueueItem item = queue.poll();
+        if (item != null)
+            polledCount.increment();
+        return item;
+    }
+
+    /**
+     * Get the number of urls waiting. Not exact while the threads are running.
+     * @return The number of urls.
+     */
+    public long size() {
+        // Counted, as the size of the queue itself takes a walk over it.
+        return enqueuedCount.sum() - polledCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d urls enqueued, %d left", enqueuedCount.sum(), size());
+    }
+}
@@ -0,0 +1,49 @@
+package edu.ucr.cs242.crawler;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The url strings in a concurrent hash set, exact but large.
+ */
+public class HashVisitedSet implements VisitedSet {
+    private final Set<String> urls = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public boolean add(String url) {
+        return urls.add(url);
+    }
+
+    @Override
+    public boolean addFingerprint(long fingerprint) {
+        throw new UnsupportedOperationException("the url strings cannot be restored from fingerprints");
+    }
+
+    @Override
+    public boolean contains(String url) {
+        return urls.contains(url);
+    }
+
+    @Override
+    public long size() {
+        return urls.size();
+    }
+
+    /**
+     * A rough estimate: the node (32 bytes) & table slot (4 bytes) of the map,
+     * and the String (24 bytes) with its Latin-1 array (16 bytes + length).
+     */
+    @Override
+    public long memoryUsage() {
+        long bytes = 0;
+        for (String url : urls) {
+            bytes += 32 + 4 + 24 + 16 + url.length();
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "hash";
+    }
+}
@@ -0,0 +1,107 @@
+package edu.ucr.cs242.crawler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * The politeness of the crawler, kept in one place: the urls waiting to be fetched, grouped by host, with a heap
+ * of the hosts ordered by the next time each may be requested. Requests to a host are spaced by its delay,
+ * counted from the start of the previous one, so the rate per host is exact however many fetches are in flight.
+ * Whoever takes a url gets the one of the host ready first, rather than sleeping on a particular host.
+ */
+public class HostScheduler {
+    private static class Host {
+        private final Deque<Frontier.QueueItem> waiting = new ArrayDeque<>();
+        private final long delay;
+        private long nextAllowed;
+
+        private Host(long delay, long nextAllowed) {
+            this.delay = delay;
+            this.nextAllowed = nextAllowed;
+        }
+    }
+
+    private final ToLongFunction<String> delayOfHost;
+    private final Map<String, Host> hosts = new HashMap<>();
+    private final PriorityQueue<Host> readyHeap = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.nextAllowed - b.nextAllowed, 0));
+    private int size = 0;
+
+    /**
+     * Construct a scheduler.
+     * @param delayOfHost The time between two requests to a host (milliseconds), asked once for each host.
+     */
+    public HostScheduler(ToLongFunction<String> delayOfHost) {
+        this.delayOfHost = delayOfHost;
+    }
+
+    private Host getHost(String name) {
+        return hosts.computeIfAbsent(name, key ->
+                new Host(TimeUnit.MILLISECONDS.toNanos(delayOfHost.applyAsLong(key)), System.nanoTime()));
+    }
+
+    /**
+     * Add a url to wait for its host.
+     * @param item The url.
+     */
+    public synchronized void submit(Frontier.QueueItem item) {
+        String name;
+        try { name = new URL(item.getUrl()).getHost(); }
+        catch (MalformedURLException e) { name = ""; }
+
+        Host host = getHost(name);
+        // An idle host is not in the heap.
+        if (host.waiting.isEmpty())
+            readyHeap.add(host);
+        host.waiting.addLast(item);
+        ++size;
+        notifyAll();
+    }
+
+    /**
+     * Take a url of the host ready first, waiting until it is allowed.
+     * The next request to the host is then allowed after its delay.
+     * @param timeout The maximum time to wait (milliseconds).
+     * @return The url, or null if none is allowed within the timeout.
+     */
+    public synchronized Frontier.QueueItem poll(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        while (true) {
+            Host host = readyHeap.peek();
+            long now = System.nanoTime();
+
+            if (host != null && host.nextAllowed - now <= 0) {
+                readyHeap.poll();
+                Frontier.QueueItem item = host.waiting.pollFirst();
+                --size;
+                host.nextAllowed = now + host.delay;
+                if (!host.waiting.isEmpty())
+                    readyHeap.add(host);
+                return item;
+            }
+
+            long waitFor = deadline - now;
+            if (waitFor <= 0)
+                return null;
+            if (host != null)
+                waitFor = Math.min(waitFor, host.nextAllowed - now);
+            TimeUnit.NANOSECONDS.timedWait(this, waitFor);
+        }
+    }
+
+    /**
+     * Get the number of urls waiting.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return hosts.size() + " hosts, " + size + " urls waiting";
+    }
+}
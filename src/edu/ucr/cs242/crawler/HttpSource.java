@@ -0,0 +1,166 @@
+package edu.ucr.cs242.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The pages from the web, on a non-blocking HTTP client. Many requests are in flight on a few threads.
+ * As Jsoup did, the pages are asked for gzipped, and cut off at MAX_BODY_SIZE.
+ */
+public class HttpSource implements PageSource {
+    /**
+     * The time limit of a request (seconds).
+     */
+    public static final int TIMEOUT = 30;
+    /**
+     * The maximum size of a page (bytes), both as received & as decompressed; the rest is discarded.
+     * The default of Jsoup.
+     */
+    public static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    /**
+     * The body of a response, up to MAX_BODY_SIZE. Once there is enough, the rest is cancelled.
+     */
+    private static class LimitedBody implements HttpResponse.BodySubscriber<byte[]> {
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private Flow.Subscription subscription;
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            if (body.isDone())
+                return;
+
+            for (ByteBuffer buffer : buffers) {
+                byte[] chunk = new byte[Math.min(buffer.remaining(), MAX_BODY_SIZE - bytes.size())];
+                buffer.get(chunk);
+                bytes.write(chunk, 0, chunk.length);
+            }
+            if (bytes.size() >= MAX_BODY_SIZE) {
+                subscription.cancel();
+                body.complete(bytes.toByteArray());
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(bytes.toByteArray());
+        }
+    }
+
+    private final HttpClient client;
+    private final String userAgent;
+
+    /**
+     * Construct a source on the web.
+     * @param userAgent The user agent to identify ourselves with.
+     */
+    public HttpSource(String userAgent) {
+        this.userAgent = userAgent;
+        this.client = HttpClient.newBuilder()
+                // Special:Random answers with a redirect.
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(TIMEOUT))
+                .build();
+    }
+
+    @Override
+    public void fetch(Frontier.QueueItem item, boolean fromFrontier, Map<String, String> headers,
+                      Consumer<Fetcher.FetchResult> callback) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(item.getUrl()))
+                    .header("User-Agent", userAgent)
+                    .header("Accept-Encoding", "gzip")
+                    .timeout(Duration.ofSeconds(TIMEOUT));
+            headers.forEach(builder::header);
+            request = builder.GET().build();
+        } catch (IllegalArgumentException e) {
+            callback.accept(new Fetcher.FetchResult(item, fromFrontier, null, 0, null, null, e));
+            return;
+        }
+
+        client.sendAsync(request, info -> new LimitedBody()).whenComplete((response, error) -> {
+            String body = null;
+            if (error == null) {
+                try { body = decode(response.body(), response.headers()); }
+                catch (IOException e) { error = e; }
+            }
+
+            callback.accept(error != null ?
+                    new Fetcher.FetchResult(item, fromFrontier, null, 0, null, null, error) :
+                    new Fetcher.FetchResult(item, fromFrontier, response.uri(), response.statusCode(),
+                            body, response.headers().firstValue("ETag").orElse(null), null));
+        });
+    }
+
+    /**
+     * Decode the body of a response, decompressing it if gzipped.
+     * @param body    The body as received.
+     * @param headers The response headers, telling the encoding & the charset (UTF-8 if not given).
+     */
+    private static String decode(byte[] body, HttpHeaders headers) throws IOException {
+        if (headers.firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip") && body.length > 0) {
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                byte[] buffer = new byte[8192];
+                for (int length; inflated.size() < MAX_BODY_SIZE && (length = input.read(buffer)) != -1; ) {
+                    inflated.write(buffer, 0, length);
+                }
+            } catch (EOFException e) {
+                // Cut off at MAX_BODY_SIZE as received, keep what is inflated.
+            }
+            body = Arrays.copyOf(inflated.toByteArray(), Math.min(inflated.size(), MAX_BODY_SIZE));
+        }
+
+        return new String(body, charsetOf(headers));
+    }
+
+    private static Charset charsetOf(HttpHeaders headers) {
+        String contentType = headers.firstValue("Content-Type").orElse("");
+        int index = contentType.toLowerCase().indexOf("charset=");
+        if (index >= 0) {
+            String charset = contentType.substring(index + "charset=".length()).split(";")[0];
+            try { return Charset.forName(charset.replace("\"", "").trim()); }
+            catch (IllegalArgumentException e) { /* Unknown, fall back to UTF-8. */ }
+        }
+
+        return StandardCharsets.UTF_8;
+    }
+}
@@ -0,0 +1,189 @@
+package edu.ucr.cs242.crawler;
+
+import org.jsoup.nodes.Element;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The outgoing links of a page, in one pass over its <a>s: the titles linked to, and the urls to crawl.
+ * The host & path regexes are compiled once, and their matchers are reset onto the href itself, so a link
+ * to somewhere else costs no allocation. Links relative to the host root (the most of Wikipedia's) and plain
+ * absolute ones are taken apart by hand; only the other hrefs are resolved by URL.
+ * Not thread-safe, as the matchers are reused; one for each crawl thread.
+ */
+public class LinkExtractor {
+    /**
+     * The links of a page, in the order found, without duplicates.
+     */
+    public static class Links {
+        private final List<String> titles;
+        private final List<String> urls;
+
+        /**
+         * Get the titles linked to, with `_` as space.
+         */
+        public List<String> getTitles() {
+            return titles;
+        }
+
+        /**
+         * Get the urls to crawl, without the anchor part.
+         */
+        public List<String> getUrls() {
+            return urls;
+        }
+
+        public Links(List<String> titles, List<String> urls) {
+            this.titles = titles;
+            this.urls = urls;
+        }
+    }
+
+    private final Pattern pathPattern;
+    private final Matcher hostMatcher;
+    private final Matcher pathMatcher;
+
+    /**
+     * Construct an extractor.
+     * @param crawlHostRegex The url to be crawled should be within this host.
+     * @param crawlPathRegex The path of the url should start with this prefix, with the title as its group 1.
+     */
+    public LinkExtractor(String crawlHostRegex, String crawlPathRegex) {
+        this.pathPattern = Pattern.compile(crawlPathRegex);
+        this.hostMatcher = Pattern.compile(crawlHostRegex).matcher("");
+        this.pathMatcher = pathPattern.matcher("");
+    }
+
+    private boolean matchesHost(CharSequence text, int start, int end) {
+        return hostMatcher.reset(text).region(start, end).matches();
+    }
+
+    private boolean matchesPath(CharSequence text, int start, int end) {
+        return pathMatcher.reset(text).region(start, end).matches();
+    }
+
+    /**
+     * Check if a url is within the host & path to crawl.
+     */
+    public boolean accepts(URL url) {
+        String host = url.getHost();
+        String path = url.getPath();
+        return matchesHost(host, 0, host.length()) && matchesPath(path, 0, path.length());
+    }
+
+    /**
+     * Get the protocol & host of a url, with the port unless the default one, for a path to follow.
+     */
+    public static String prefixOf(URL url) {
+        int port = url.getPort();
+        String host = port == -1 || port == url.getDefaultPort() ? url.getHost() : url.getHost() + ":" + port;
+        return url.getProtocol() + "://" + host;
+    }
+
+    /**
+     * Find the first of the given characters within [start, end) of a url, or end if none.
+     */
+    private static int indexOfAny(String text, int start, int end, String chars) {
+        for (int i = start; i < end; i++) {
+            if (chars.indexOf(text.charAt(i)) >= 0)
+                return i;
+        }
+        return end;
+    }
+
+    /**
+     * Extract the links of a page.
+     * @param content The element holding the content of the page.
+     * @param base    The url of the page, to resolve relative links against.
+     * @return The links.
+     */
+    public Links extract(Element content, URL base) {
+        Set<String> titles = new LinkedHashSet<>();
+        Set<String> urls = new LinkedHashSet<>();
+        String baseHost = base.getHost();
+        boolean baseHostMatched = matchesHost(baseHost, 0, baseHost.length());
+        String basePrefix = prefixOf(base);
+
+        for (Element a : content.getElementsByTag("a")) {
+            if (!a.hasAttr("href"))
+                continue;
+            String href = a.attr("href");
+
+            // The text holding the path (& query) from pathStart, that is href, or the file of href resolved.
+            // The url to crawl is then prefix (protocol & host) followed by the path & query.
+            String text = href;
+            String prefix;
+            int pathStart;
+
+            if (href.startsWith("/") && !href.startsWith("//") && !href.contains("/.")) {
+                // Relative to the host root, the usual internal link.
+                if (!baseHostMatched)
+                    continue;
+                prefix = basePrefix;
+                pathStart = 0;
+            } else if ((href.startsWith("https://") || href.startsWith("http://")) && !href.contains("/.")) {
+                int hostStart = href.indexOf("://") + 3;
+                int hostEnd = indexOfAny(href, hostStart, href.length(), "/?#");
+                // User info, port or IPv6? Leave it to URL.
+                if (indexOfAny(href, hostStart, hostEnd, "@:[\\") < hostEnd) {
+                    text = null;
+                    prefix = null;
+                    pathStart = 0;
+                } else {
+                    if (!matchesHost(href, hostStart, hostEnd))
+                        continue;
+                    prefix = href.substring(0, hostEnd);
+                    pathStart = hostEnd;
+                }
+            } else {
+                text = null;
+                prefix = null;
+                pathStart = 0;
+            }
+
+            if (text == null) {
+                URL url;
+                try { url = new URL(base, href); }
+                catch (MalformedURLException e) { continue; }
+                if (!matchesHost(url.getHost(), 0, url.getHost().length()))
+                    continue;
+                text = url.getFile();
+                prefix = prefixOf(url);
+            }
+
+            int fileEnd = indexOfAny(text, pathStart, text.length(), "#");
+            int pathEnd = indexOfAny(text, pathStart, fileEnd, "?");
+            if (!matchesPath(text, pathStart, pathEnd))
+                continue;
+
+            // The title, from the decoded path.
+            String title = null;
+            if (text.indexOf('%', pathStart) < 0 && text.indexOf('+', pathStart) < 0) {
+                pathMatcher.reset(text).region(pathStart, pathEnd);
+                if (pathMatcher.find() && pathMatcher.groupCount() == 1)
+                    title = pathMatcher.group(1);
+            } else {
+                try {
+                    String path = URLDecoder.decode(text.substring(pathStart, pathEnd), "UTF-8");
+                    Matcher matcher = pathPattern.matcher(path);
+                    if (matcher.find() && matcher.groupCount() == 1)
+                        title = matcher.group(1);
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    // Not decodable, no title.
+                }
+            }
+            if (title != null)
+                titles.add(title.replace('_', ' '));
+
+            urls.add(prefix + text.substring(pathStart, fileEnd));
+        }
+
+        return new Links(new ArrayList<>(titles), new ArrayList<>(urls));
+    }
+}
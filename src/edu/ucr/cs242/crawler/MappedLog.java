@@ -0,0 +1,125 @@
+package edu.ucr.cs242.crawler;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only file, written through a memory-mapped region, so an append is a memory copy rather than a
+ * system call. The file is mapped REGION_SIZE bytes at a time, and is longer than what has been written;
+ * the length that counts is the one saved by the last checkpoint.
+ */
+public class MappedLog implements Closeable {
+    /**
+     * The size of a mapped region (bytes).
+     */
+    public static final int REGION_SIZE = 64 << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    /**
+     * Open a log for appending.
+     * @param path        The file of the log, created if not exists.
+     * @param validLength The length written before, appends start from here. Anything after is overwritten.
+     */
+    public MappedLog(Path path, long validLength) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(validLength);
+    }
+
+    private void map(long start) throws IOException {
+        if (region != null)
+            region.force();
+
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, REGION_SIZE);
+    }
+
+    private void ensure(int length) throws IOException {
+        if (region.remaining() < length)
+            map(regionStart + region.position());
+    }
+
+    public synchronized void appendLong(long value) throws IOException {
+        ensure(Long.BYTES);
+        region.putLong(value);
+    }
+
+    /**
+     * Append a record of an int & a short string.
+     * @param value The int.
+     * @param text  The string, at most 65535 bytes in UTF-8.
+     */
+    public synchronized void appendRecord(int value, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF)
+            throw new IOException("record too long: " + bytes.length + " bytes");
+
+        ensure(Integer.BYTES + Short.BYTES + bytes.length);
+        region.putInt(value);
+        region.putShort((short) bytes.length);
+        region.put(bytes);
+    }
+
+    /**
+     * Flush what has been appended to the disk.
+     * @return The length of the log, all of which is on disk.
+     */
+    public synchronized long force() {
+        region.force();
+        return regionStart + region.position();
+    }
+
+    /**
+     * Open a log for reading.
+     * @param path   The file of the log.
+     * @param length The valid length of the log.
+     * @return The stream, limited to the valid length.
+     */
+    public static DataInputStream openReader(Path path, long length) throws IOException {
+        InputStream input = Files.newInputStream(path);
+        return new DataInputStream(new BufferedInputStream(new FilterInputStream(input) {
+            private long remaining = length;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0)
+                    return -1;
+                int value = super.read();
+                if (value >= 0)
+                    --remaining;
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) throws IOException {
+                if (remaining <= 0)
+                    return -1;
+                int read = super.read(buffer, offset, (int) Math.min(count, remaining));
+                if (read > 0)
+                    remaining -= read;
+                return read;
+            }
+        }, 1 << 16));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        region.force();
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,294 @@
+package edu.ucr.cs242.crawler;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.ucr.cs242.Utility;
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A load test of the whole crawler, against a synthetic wiki served locally (see MockWikiHandler):
+ * robots.txt, the Special:Random redirect, link following & the database writes, without touching Wikipedia.
+ * The crawler reports its throughput & fetch latency, and the wiki the requests it served.
+ */
+public class MockWiki {
+    /**
+     * The address to serve the wiki on; the crawler then crawls only this host.
+     */
+    public static final String HOST = "127.0.0.1";
+
+    private final MockWikiHandler handler;
+    private final HttpServer server;
+    // Many threads, as each request sleeps for the latency.
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final LocalDateTime startAt = LocalDateTime.now();
+
+    /**
+     * Start serving a wiki.
+     * @param handler The wiki.
+     * @param port    The local port to listen on (0 for any free one).
+     */
+    public MockWiki(MockWikiHandler handler, int port) throws IOException {
+        this.handler = handler;
+        this.server = HttpServer.create(new InetSocketAddress(HOST, port), 0);
+        server.createContext("/", handler);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Get the url of the wiki, without the trailing slash.
+     */
+    public String getBaseUrl() {
+        return "http://" + HOST + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Print the number of requests served, the rate and the latency distribution so far.
+     * @param summary Whether this is the final report.
+     */
+    public void reportProgress(boolean summary) {
+        Duration elapsed = Duration.between(startAt, LocalDateTime.now());
+        System.out.format("%sMockWiki served %s, %.1f requests/s. Latency: %s. Elapsed time: %s.%n",
+                summary ? "Summary: " : "", handler,
+                handler.getServiceLatency().getCount() * 1000.0 / Math.max(elapsed.toMillis(), 1),
+                handler.getServiceLatency(), Utility.elapsedTime(elapsed));
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: mockwiki [options] <jdbc-url>");
+        System.out.println("use -h for a list of possible options");
+        System.exit(1);
+    }
+
+    private static void printMessage(String message) {
+        System.out.println("mockwiki: " + message);
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("mockwiki [options] <jdbc-url>", options);
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws ClassNotFoundException {
+        // Default values
+        final int WIKI_PAGES = 100000;
+        final int LINKS_PER_PAGE = 50;
+        final double LINK_SKEW = 1.5;
+        final int PAGE_SIZE = 30000;
+        final int LATENCY = 50;
+        final double ERROR_RATE = 0.01;
+        final long SEED = 242;
+        final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+        final int NUMBER_OF_FETCHES = 50;
+        final int NUMBER_OF_PAGES = 2000;
+        final int CRAWL_DEPTH = 10;
+        final int CRAWL_INTERVAL = 0;
+        final String CRAWL_PATH_REGEX = "^/wiki/([^:]*)$";
+        final String VISITED_SET = "fingerprint";
+        final double FALSE_POSITIVE = 0.001;
+
+        Options options = new Options();
+        options.addOption(Option.builder("n")
+                        .longOpt("wiki-pages")
+                        .argName("NUM OF PAGES")
+                        .desc("the number of articles in the wiki (default: " + WIKI_PAGES + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("o")
+                        .longOpt("links")
+                        .argName("NUM OF LINKS")
+                        .desc("the number of links in an article (default: " + LINKS_PER_PAGE + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("k")
+                        .longOpt("link-skew")
+                        .argName("SKEW")
+                        .desc("how much the links lean towards a few popular articles, 1 for uniform " +
+                                "(default: " + LINK_SKEW + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("s")
+                        .longOpt("page-size")
+                        .argName("CHARACTERS")
+                        .desc("the size of the text of an article (default: " + PAGE_SIZE + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("a")
+                        .longOpt("latency")
+                        .argName("MILLISECONDS")
+                        .desc("the mean time before answering a request, exponentially distributed " +
+                                "(default: " + LATENCY + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("e")
+                        .longOpt("error-rate")
+                        .argName("RATE")
+                        .desc("the fraction of requests answered with 503 (default: " + ERROR_RATE + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("x")
+                        .longOpt("seed")
+                        .argName("SEED")
+                        .desc("the seed of the wiki (default: " + SEED + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("p")
+                        .longOpt("port")
+                        .argName("PORT")
+                        .desc("the local port to listen on (default: any free one)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption("S", "serve", false, "only serve the wiki until terminated, without crawling " +
+                "(JDBC url is not required)");
+
+        options.addOption(Option.builder("t")
+                        .longOpt("threads")
+                        .argName("NUM OF THREADS")
+                        .desc("the number of threads for parsing the fetched pages (default: " +
+                                NUMBER_OF_THREADS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("f")
+                        .longOpt("fetches")
+                        .argName("NUM OF FETCHES")
+                        .desc("the maximum number of pages being fetched or waiting to be parsed at once " +
+                                "(default: " + NUMBER_OF_FETCHES + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("c")
+                        .longOpt("pages")
+                        .argName("NUM OF PAGES")
+                        .desc("the number of web pages to crawl (default: " + NUMBER_OF_PAGES + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("i")
+                        .longOpt("interval")
+                        .argName("INTERVAL")
+                        .desc("the interval (milliseconds) between two requests to the wiki " +
+                                "(default: " + CRAWL_INTERVAL + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("l")
+                        .longOpt("log-output")
+                        .argName("FILE NAME")
+                        .desc("the file to write logs into (default: STDOUT)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption("h", "help", false, "print a synopsis of standard options");
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            List<String> argList = cmd.getArgList();
+
+            if (cmd.hasOption("h")) {
+                printHelp(options);
+                System.exit(0);
+            }
+
+            boolean serveOnly = cmd.hasOption("serve");
+            if (argList.isEmpty() && !serveOnly) {
+                printMessage("JDBC url is not specified");
+                printUsage();
+            }
+
+            String jdbcUrl = serveOnly ? null : argList.get(0);
+            if (!serveOnly && !WikiCrawler.initializeDatabase(jdbcUrl)) {
+                printMessage("invalid JDBC url");
+                printUsage();
+            }
+
+            String logOutput = cmd.getOptionValue("log-output");
+            if (!Utility.openOutputLog(logOutput)) {
+                printMessage("invalid log file path");
+                printUsage();
+            }
+
+            try {
+                int wikiPages = Integer.parseInt(cmd.getOptionValue("wiki-pages", String.valueOf(WIKI_PAGES)));
+                int numOfLinks = Integer.parseInt(cmd.getOptionValue("links", String.valueOf(LINKS_PER_PAGE)));
+                double linkSkew = Double.parseDouble(cmd.getOptionValue("link-skew", String.valueOf(LINK_SKEW)));
+                int pageSize = Integer.parseInt(cmd.getOptionValue("page-size", String.valueOf(PAGE_SIZE)));
+                int latency = Integer.parseInt(cmd.getOptionValue("latency", String.valueOf(LATENCY)));
+                double errorRate = Double.parseDouble(cmd.getOptionValue("error-rate", String.valueOf(ERROR_RATE)));
+                long seed = Long.parseLong(cmd.getOptionValue("seed", String.valueOf(SEED)));
+                int port = Integer.parseInt(cmd.getOptionValue("port", "0"));
+
+                int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                int numOfFetches = Integer.parseInt(cmd.getOptionValue("fetches", String.valueOf(NUMBER_OF_FETCHES)));
+                int numOfPages = Integer.parseInt(cmd.getOptionValue("pages", String.valueOf(NUMBER_OF_PAGES)));
+                int crawlInterval = Integer.parseInt(cmd.getOptionValue("interval", String.valueOf(CRAWL_INTERVAL)));
+
+                if (wikiPages <= 0 || numOfLinks < 0 || linkSkew <= 0 || pageSize < 0 || latency < 0)
+                    throw new IllegalArgumentException("invalid wiki");
+                if (numOfThreads <= 0 || numOfFetches <= 0)
+                    throw new IllegalArgumentException("threads & fetches must be positive");
+
+                MockWiki wiki;
+                try {
+                    wiki = new MockWiki(new MockWikiHandler(wikiPages, numOfLinks, linkSkew, pageSize, latency,
+                            errorRate, seed), port);
+                } catch (IOException e) {
+                    printMessage("cannot listen on port " + port + " (" + e.getMessage() + ")");
+                    System.exit(1);
+                    return;
+                }
+
+                String entryUrl = wiki.getBaseUrl() + "/wiki/Special:Random";
+                System.out.println("MockWiki started at " + wiki.startAt.toLocalTime() + ". " +
+                        "Articles: " + wikiPages + ". Listening on " + entryUrl);
+
+                if (serveOnly) {
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        wiki.stop();
+                        wiki.reportProgress(true);
+                    }));
+                    return;
+                }
+
+                VisitedSet visitedUrls = VisitedSet.create(VISITED_SET, (long) numOfPages * Math.max(numOfLinks, 1),
+                        FALSE_POSITIVE);
+                new WikiCrawler(numOfThreads, numOfFetches, numOfPages, CRAWL_DEPTH, crawlInterval, entryUrl,
+                        "^" + HOST.replace(".", "\\.") + "$", CRAWL_PATH_REGEX, jdbcUrl, visitedUrls,
+                        null, 0, false, null, null, 0).start();
+
+                wiki.stop();
+                wiki.reportProgress(true);
+            } catch (IllegalArgumentException e) {
+                printMessage("invalid option(s)");
+                printHelp(options);
+                System.exit(1);
+            }
+        } catch (ParseException e) {
+            // Lower the first letter, which as default is an upper letter.
+            printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
+            printHelp(options);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package edu.ucr.cs242.crawler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import edu.ucr.cs242.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serve a synthetic wiki, a stand-in for Wikipedia in load tests: GET /robots.txt, /wiki/Special:Random (a redirect
+ * to a random article) and /wiki/TITLE, with the markup the crawler parses (firstHeading, mw-parser-output,
+ * mw-normal-catlinks & footer-info-lastmod). The articles are generated from their ids on each request, so the same
+ * seed gives the same wiki. The links of an article are drawn towards the low ids by the skew, as a few articles of
+ * Wikipedia get most of the links. Every DRAFT_EVERY-th article is a draft, disallowed by the robots.txt.
+ */
+public class MockWikiHandler implements HttpHandler {
+    public static final int DRAFT_EVERY = 20;
+    public static final int NUM_OF_CATEGORIES = 50;
+    public static final String ROBOTS_TXT = "User-agent: *\nDisallow: /w/\nDisallow: /wiki/Draft_\n" +
+            "Disallow: /wiki/Special:Search\n";
+
+    private static final String[] WORDS = {
+            "the", "of", "and", "in", "was", "is", "for", "as", "on", "with", "by", "he", "at", "from", "his", "an",
+            "were", "are", "which", "first", "also", "after", "city", "world", "history", "river", "war", "national",
+            "century", "album", "station", "university", "population", "government", "season", "church", "species",
+            "football", "company", "district", "series", "language", "village", "empire", "election", "county"
+    };
+    private static final DateTimeFormatter LAST_MODIFY_FORMAT = DateTimeFormatter.ofPattern(
+            "d MMMM yyyy', at 'HH:mm", Locale.US);
+
+    private final int numOfPages;
+    private final int numOfLinks;
+    private final double linkSkew;
+    private final int pageSize;
+    private final int latency;
+    private final double errorRate;
+    private final long seed;
+
+    private final LatencyHistogram serviceLatency = new LatencyHistogram();
+    private final LongAdder pageCount = new LongAdder();
+    private final LongAdder redirectCount = new LongAdder();
+    private final LongAdder notModifiedCount = new LongAdder();
+    private final LongAdder notFoundCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+
+    /**
+     * Construct a handler.
+     * @param numOfPages The number of articles in the wiki.
+     * @param numOfLinks The number of links in an article.
+     * @param linkSkew   How much the links lean towards the low ids (1 for uniform).
+     * @param pageSize   The size (characters) of the text of an article.
+     * @param latency    The mean time (milliseconds) before answering a request, exponentially distributed.
+     * @param errorRate  The fraction of requests (other than robots.txt) answered with 503.
+     * @param seed       The seed of the wiki.
+     */
+    public MockWikiHandler(int numOfPages, int numOfLinks, double linkSkew, int pageSize, int latency,
+                           double errorRate, long seed) {
+        this.numOfPages = numOfPages;
+        this.numOfLinks = numOfLinks;
+        this.linkSkew = linkSkew;
+        this.pageSize = pageSize;
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.seed = seed;
+    }
+
+    /**
+     * Get the title of an article, with `_` as space.
+     */
+    public static String titleOf(int id) {
+        return (id % DRAFT_EVERY == 0 ? "Draft_" : "Article_") + id;
+    }
+
+    /**
+     * Get the id of an article from its title.
+     * @return The id, or -1 if no such article.
+     */
+    private int idOf(String title) {
+        int separator = title.indexOf('_');
+        if (separator < 0)
+            return -1;
+
+        int id;
+        try { id = Integer.parseInt(title.substring(separator + 1)); }
+        catch (NumberFormatException e) { return -1; }
+        return id >= 0 && id < numOfPages && titleOf(id).equals(title) ? id : -1;
+    }
+
+    private static void appendWords(StringBuilder html, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            html.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+    }
+
+    private void appendLink(StringBuilder html, Random random) {
+        // Towards the low ids, for linkSkew > 1.
+        String title = titleOf((int) (numOfPages * Math.pow(random.nextDouble(), linkSkew)));
+        html.append("<a href=\"/wiki/").append(title).append("\" title=\"").append(title.replace('_', ' '))
+                .append("\">").append(title.replace('_', ' ')).append("</a> ");
+    }
+
+    /**
+     * Generate the HTML of an article.
+     */
+    public String render(int id) {
+        Random random = new Random(seed * 1000003 + id);
+        String title = titleOf(id);
+        StringBuilder html = new StringBuilder(pageSize + 4096);
+
+        html.append("<!DOCTYPE html>\n<html lang=\"en\"><head><meta charset=\"UTF-8\"><title>")
+                .append(title.replace('_', ' ')).append(" - Wikipedia</title></head><body>\n")
+                .append("<h1 id=\"firstHeading\" class=\"firstHeading\">").append(title.replace('_', ' '))
+                .append("</h1>\n<div id=\"mw-content-text\"><div class=\"mw-parser-output\">\n")
+                .append("<table class=\"infobox\"><tr><th>").append(title.replace('_', ' '))
+                .append("</th></tr><tr><td>");
+        appendWords(html, random, 8);
+        html.append("</td></tr></table>\n");
+
+        // About 6 characters a word, with the links spread evenly over the paragraphs.
+        int numOfWords = Math.max(pageSize / 6, 1);
+        int wordsPerLink = Math.max(numOfWords / Math.max(numOfLinks, 1), 1);
+        int linksLeft = numOfLinks;
+        int section = 0;
+        int reference = 0;
+
+        for (int words = 0; words < numOfWords; ) {
+            if (words > 0 && random.nextInt(4) == 0) {
+                ++section;
+                html.append("<h2><span class=\"mw-headline\" id=\"Section_").append(section).append("\">Section ")
+                        .append(section).append("</span><span class=\"mw-editsection\">[<a href=\"/w/index.php?title=")
+                        .append(title).append("&amp;action=edit&amp;section=").append(section)
+                        .append("\">edit</a>]</span></h2>\n");
+            }
+
+            html.append("<p>");
+            int paragraphWords = Math.min(40 + random.nextInt(80), numOfWords - words);
+            for (int i = 0; i < paragraphWords; i++, words++) {
+                html.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                if (linksLeft > 0 && words % wordsPerLink == 0) {
+                    appendLink(html, random);
+                    --linksLeft;
+                }
+            }
+            ++reference;
+            html.append("<sup class=\"reference\"><a href=\"#cite_note-").append(reference).append("\">[")
+                    .append(reference).append("]</a></sup></p>\n");
+        }
+
+        if (linksLeft > 0) {
+            html.append("<h2><span class=\"mw-headline\" id=\"See_also\">See also</span></h2>\n<ul>");
+            for (; linksLeft > 0; --linksLeft) {
+                html.append("<li>");
+                appendLink(html, random);
+                html.append("</li>");
+            }
+            html.append("</ul>\n");
+        }
+        html.append("</div></div>\n");
+
+        html.append("<div id=\"catlinks\"><div id=\"mw-normal-catlinks\">")
+                .append("<a href=\"/wiki/Help:Category\">Categories</a>: <ul>");
+        for (int i = 1 + random.nextInt(3); i > 0; i--) {
+            int category = random.nextInt(NUM_OF_CATEGORIES);
+            html.append("<li><a href=\"/wiki/Category:Group_").append(category).append("\">Group ").append(category)
+                    .append("</a></li>");
+        }
+        html.append("</ul></div></div>\n");
+
+        LocalDateTime lastModify = LocalDateTime.of(2018, 1, 1, 0, 0).plusMinutes(random.nextInt(365 * 24 * 60));
+        html.append("<div id=\"footer\"><ul><li id=\"footer-info-lastmod\"> This page was last edited on ")
+                .append(LAST_MODIFY_FORMAT.format(lastModify)).append(".</li></ul></div>\n</body></html>\n");
+        return html.toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        // -1 for no body at all, as 0 would be chunked.
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/robots.txt")) {
+            respond(exchange, 200, "text/plain", ROBOTS_TXT);
+            return;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (latency > 0) {
+            // Exponentially distributed, cut at 10 times the mean.
+            long delay = (long) Math.min(-latency * Math.log(1 - random.nextDouble()), latency * 10.0);
+            try { Thread.sleep(delay); }
+            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+
+        if (random.nextDouble() < errorRate) {
+            errorCount.increment();
+            respond(exchange, 503, "text/plain", "service unavailable\n");
+            return;
+        }
+
+        if (path.equals("/wiki/Special:Random")) {
+            redirectCount.increment();
+            exchange.getResponseHeaders().set("Location", "/wiki/" + titleOf(random.nextInt(numOfPages)));
+            respond(exchange, 302, "text/plain", "");
+            return;
+        }
+
+        int id = path.startsWith("/wiki/") ? idOf(path.substring("/wiki/".length())) : -1;
+        if (id < 0) {
+            notFoundCount.increment();
+            respond(exchange, 404, "text/plain", "no such page\n");
+            return;
+        }
+
+        // The wiki never changes, so the id is the version.
+        String etag = "\"" + seed + "-" + id + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedCount.increment();
+            respond(exchange, 304, "text/html", "");
+            return;
+        }
+
+        pageCount.increment();
+        respond(exchange, 200, "text/html", render(id));
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        long startAt = System.nanoTime();
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()))
+                respond(exchange, 405, "text/plain", "only GET is supported\n");
+            else
+                serve(exchange);
+        } finally {
+            serviceLatency.record(System.nanoTime() - startAt);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Get the time of answering a request, the latency added included.
+     */
+    public LatencyHistogram getServiceLatency() {
+        return serviceLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests (%d pages, %d redirects, %d not modified, %d not found, %d errors)",
+                serviceLatency.getCount(), pageCount.sum(), redirectCount.sum(), notModifiedCount.sum(),
+                notFoundCount.sum(), errorCount.sum());
+    }
+}
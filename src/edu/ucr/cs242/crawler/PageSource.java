@@ -0,0 +1,19 @@
+package edu.ucr.cs242.crawler;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Where the fetcher gets the pages from: the web (HttpSource), or saved responses replayed (ReplaySource).
+ */
+public interface PageSource {
+    /**
+     * Start getting a url, following redirects.
+     * @param item         The url to get.
+     * @param fromFrontier Whether the url was taken from the frontier.
+     * @param headers      The extra request headers, e.g. the validators of a conditional GET.
+     * @param callback     Called with the result, once the page is got or getting it fails, on whatever thread.
+     */
+    void fetch(Frontier.QueueItem item, boolean fromFrontier, Map<String, String> headers,
+               Consumer<Fetcher.FetchResult> callback);
+}
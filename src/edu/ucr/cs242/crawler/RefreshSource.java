@@ -0,0 +1,120 @@
+package edu.ucr.cs242.crawler;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The pages already stored, to be fetched again with a conditional GET. The pages are read by rowid,
+ * a batch at a time, so that no read holds the database while the writers commit.
+ */
+public class RefreshSource implements AutoCloseable {
+    /**
+     * The number of pages read per query.
+     */
+    public static final int BATCH_READ_COUNT = 1000;
+    public static final String SQL_QUERY = "SELECT rowid, title, lastModify, etag FROM pages " +
+            "WHERE rowid > ? ORDER BY rowid LIMIT " + BATCH_READ_COUNT;
+    public static final String SQL_COUNT = "SELECT COUNT(*) FROM pages";
+
+    public static class StoredPage {
+        private final String title;
+        private final String lastModify;
+        private final String etag;
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getLastModify() {
+            return lastModify;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public StoredPage(String title, String lastModify, String etag) {
+            this.title = title;
+            this.lastModify = lastModify;
+            this.etag = etag;
+        }
+
+        /**
+         * Get the headers of a conditional GET for the page: If-None-Match with the ETag stored,
+         * and If-Modified-Since with the last modification (in UTC, as Wikipedia shows it).
+         */
+        public Map<String, String> getValidators() {
+            Map<String, String> headers = new HashMap<>();
+            if (etag != null)
+                headers.put("If-None-Match", etag);
+            if (lastModify != null) {
+                try {
+                    LocalDateTime time = LocalDateTime.parse(lastModify,
+                            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+                    headers.put("If-Modified-Since",
+                            DateTimeFormatter.RFC_1123_DATE_TIME.format(time.atOffset(ZoneOffset.UTC)));
+                } catch (DateTimeParseException e) {
+                    // No valid time, the ETag only.
+                }
+            }
+            return headers;
+        }
+    }
+
+    private final Connection dbConnection;
+    private final PreparedStatement query;
+    private final Deque<StoredPage> buffer = new ArrayDeque<>();
+    private long lastRowId = 0;
+    private boolean exhausted = false;
+
+    /**
+     * Open the stored pages.
+     * @param jdbcUrl The JDBC url to access database.
+     */
+    public RefreshSource(String jdbcUrl) throws SQLException {
+        this.dbConnection = DriverManager.getConnection(jdbcUrl);
+        this.query = dbConnection.prepareStatement(SQL_QUERY);
+    }
+
+    /**
+     * Get the number of pages stored.
+     */
+    public int count() throws SQLException {
+        try (Statement statement = dbConnection.createStatement();
+             ResultSet result = statement.executeQuery(SQL_COUNT)) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Get the next page stored.
+     * @return The page, or null if all pages have been read.
+     */
+    public StoredPage next() throws SQLException {
+        if (buffer.isEmpty() && !exhausted) {
+            query.setLong(1, lastRowId);
+            try (ResultSet result = query.executeQuery()) {
+                while (result.next()) {
+                    lastRowId = result.getLong("rowid");
+                    buffer.addLast(new StoredPage(result.getString("title"), result.getString("lastModify"),
+                            result.getString("etag")));
+                }
+            }
+            exhausted = buffer.size() < BATCH_READ_COUNT;
+        }
+        return buffer.pollFirst();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        query.close();
+        dbConnection.close();
+    }
+}
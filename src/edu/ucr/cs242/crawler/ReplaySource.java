@@ -0,0 +1,353 @@
+package edu.ucr.cs242.crawler;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The pages from saved responses, to replay a fixed crawl without the web: WARC files (the response records,
+ * redirects included), and article HTML files, each served as the entry url's host followed by /wiki/ and
+ * the file name. The archives are indexed up front, and a body is read from disk when its url is asked for.
+ * A url not saved is answered with 404, except Special:Random, which redirects to the saved pages in turn.
+ * As with the web, a fetch returns at once; the body is read & the callback called on a pool of threads.
+ */
+public class ReplaySource implements PageSource, Closeable {
+    /**
+     * The maximum number of redirects followed, as the HTTP client does.
+     */
+    public static final int MAX_REDIRECTS = 5;
+
+    private static class Response {
+        // The WARC file holding the body, or null if the body is a whole HTML file.
+        private final FileChannel channel;
+        private final Path file;
+        private final long offset;
+        private final int length;
+        private final int statusCode;
+        private final String location;
+        private final String etag;
+        private final boolean chunked;
+        private final boolean gzipped;
+
+        private Response(FileChannel channel, Path file, long offset, int length, int statusCode, String location,
+                         String etag, boolean chunked, boolean gzipped) {
+            this.channel = channel;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.statusCode = statusCode;
+            this.location = location;
+            this.etag = etag;
+            this.chunked = chunked;
+            this.gzipped = gzipped;
+        }
+    }
+
+    /**
+     * The bytes of a file read line by line, keeping track of the position.
+     */
+    private static class Cursor {
+        private final InputStream in;
+        private long position = 0;
+
+        private Cursor(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Read a line without its CRLF (or LF), as ISO-8859-1.
+         * @return The line, or null at the end of file.
+         */
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int ch;
+            while ((ch = in.read()) >= 0) {
+                ++position;
+                if (ch == '\n')
+                    break;
+                line.append((char) ch);
+            }
+            if (ch < 0 && line.length() == 0)
+                return null;
+            if (line.length() > 0 && line.charAt(line.length() - 1) == '\r')
+                line.setLength(line.length() - 1);
+            return line.toString();
+        }
+
+        /**
+         * Read header lines up to an empty one, with the names in lower case.
+         */
+        private Map<String, String> readHeaders() throws IOException {
+            Map<String, String> headers = new HashMap<>();
+            String line;
+            while ((line = readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0)
+                    headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+            return headers;
+        }
+
+        private void skipTo(long target) throws IOException {
+            while (position < target) {
+                long skipped = in.skip(target - position);
+                if (skipped <= 0)
+                    throw new EOFException("truncated record");
+                position += skipped;
+            }
+        }
+    }
+
+    private final Map<String, Response> responses = new HashMap<>();
+    // The urls of the pages saved (status 200), in the order indexed, for Special:Random.
+    private final List<String> pages = new ArrayList<>();
+    private final AtomicInteger nextRandom = new AtomicInteger(0);
+    private final List<FileChannel> channels = new ArrayList<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Index the saved responses.
+     * @param path     A WARC file (.warc), an HTML file (.html or .htm), or a directory of them.
+     * @param entryUrl The url of the entry page, whose host the HTML files are served on.
+     */
+    public ReplaySource(String path, String entryUrl) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(Paths.get(path))) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        try {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".warc"))
+                    indexWarc(file);
+                else if (name.matches(".*\\.html?$"))
+                    indexHtml(file, new URL(new URL(entryUrl), "/wiki/" + name.replaceFirst("\\.html?$", "")));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of urls saved.
+     */
+    public int size() {
+        return responses.size();
+    }
+
+    /**
+     * Get the key of a url, with the path decoded, so that a url found encoded or not is the same.
+     * The port is kept, so that captures of different servers on a host are not mixed up.
+     */
+    private static String keyOf(String url) {
+        try {
+            URI uri = new URI(url);
+            return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() == -1 ? "" : ":" + uri.getPort()) +
+                    uri.getPath() +
+                    (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    private void add(String url, Response response) {
+        if (responses.put(keyOf(url), response) == null && response.statusCode == 200)
+            pages.add(url);
+    }
+
+    private void indexHtml(Path file, URL url) {
+        add(url.toString(), new Response(null, file, 0, 0, 200, null, null, false, false));
+    }
+
+    private void indexWarc(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file);
+        channels.add(channel);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            Cursor cursor = new Cursor(in);
+            String line;
+
+            while ((line = cursor.readLine()) != null) {
+                // The CRLFs after a record.
+                if (line.isEmpty())
+                    continue;
+                if (!line.startsWith("WARC/"))
+                    throw new IOException(file + ": no WARC record at byte " + (cursor.position - line.length()));
+
+                Map<String, String> fields = cursor.readHeaders();
+                long blockStart = cursor.position;
+                long blockEnd = blockStart + Long.parseLong(fields.getOrDefault("content-length", "0"));
+                String target = fields.get("warc-target-uri");
+
+                // The HTTP responses only; requests, metadata & others are skipped.
+                if ("response".equals(fields.get("warc-type")) && target != null) {
+                    // Some writers put the uri within <>.
+                    target = target.replaceAll("^<|>$", "");
+                    String[] status = Objects.toString(cursor.readLine(), "").split(" ");
+                    Map<String, String> headers = cursor.readHeaders();
+                    long bodyStart = cursor.position;
+
+                    int statusCode;
+                    try { statusCode = Integer.parseInt(status.length > 1 ? status[1] : ""); }
+                    catch (NumberFormatException e) { statusCode = 0; }
+
+                    String location = headers.get("location");
+                    if (location != null) {
+                        // A relative one is against the url requested.
+                        try { location = new URI(target).resolve(location).toString(); }
+                        catch (URISyntaxException | IllegalArgumentException e) { /* kept as is */ }
+                    }
+
+                    if (statusCode > 0 && bodyStart <= blockEnd) {
+                        add(target, new Response(channel, file, bodyStart, (int) (blockEnd - bodyStart), statusCode,
+                                location, headers.get("etag"),
+                                "chunked".equalsIgnoreCase(headers.get("transfer-encoding")),
+                                "gzip".equalsIgnoreCase(headers.get("content-encoding"))));
+                    }
+                }
+
+                cursor.skipTo(blockEnd);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException(file + ": invalid Content-Length");
+        }
+    }
+
+    /**
+     * Undo the chunked transfer encoding of a body.
+     */
+    private static byte[] dechunk(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+        Cursor cursor = new Cursor(new ByteArrayInputStream(bytes));
+        String line;
+
+        while ((line = cursor.readLine()) != null) {
+            int size;
+            try { size = Integer.parseInt(line.replaceFirst(";.*", "").trim(), 16); }
+            catch (NumberFormatException e) { throw new IOException("invalid chunk size"); }
+            if (size == 0)
+                break;
+
+            int start = (int) cursor.position;
+            if (start + size > bytes.length)
+                throw new EOFException("truncated chunk");
+            out.write(bytes, start, size);
+            cursor.skipTo(start + size);
+            cursor.readLine();
+        }
+        return out.toByteArray();
+    }
+
+    private static String readBody(Response response) throws IOException {
+        byte[] bytes;
+        if (response.channel == null) {
+            bytes = Files.readAllBytes(response.file);
+        } else {
+            ByteBuffer buffer = ByteBuffer.allocate(response.length);
+            while (buffer.hasRemaining()) {
+                if (response.channel.read(buffer, response.offset + buffer.position()) < 0)
+                    throw new EOFException(response.file + ": truncated body");
+            }
+            bytes = buffer.array();
+        }
+
+        if (response.chunked)
+            bytes = dechunk(bytes);
+        if (response.gzipped) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                bytes = in.readAllBytes();
+            }
+        }
+        // As Wikipedia serves.
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isRedirect(int statusCode) {
+        return statusCode == 301 || statusCode == 302 || statusCode == 303 || statusCode == 307 || statusCode == 308;
+    }
+
+    @Override
+    public void fetch(Frontier.QueueItem item, boolean fromFrontier, Map<String, String> headers,
+                      Consumer<Fetcher.FetchResult> callback) {
+        try {
+            executor.execute(() -> serve(item, fromFrontier, headers, callback));
+        } catch (RejectedExecutionException e) {
+            // Closed.
+            callback.accept(new Fetcher.FetchResult(item, fromFrontier, null, 0, null, null, e));
+        }
+    }
+
+    /**
+     * Look up the response to a url, following redirects, and call back with it.
+     */
+    private void serve(Frontier.QueueItem item, boolean fromFrontier, Map<String, String> headers,
+                       Consumer<Fetcher.FetchResult> callback) {
+        String url = item.getUrl();
+
+        try {
+            for (int redirects = 0; ; ) {
+                URI uri = URI.create(url);
+                Response response = responses.get(keyOf(url));
+
+                if (response == null && url.endsWith("/Special:Random") && !pages.isEmpty() &&
+                        redirects < MAX_REDIRECTS) {
+                    url = pages.get(Math.floorMod(nextRandom.getAndIncrement(), pages.size()));
+                    ++redirects;
+                    continue;
+                }
+                if (response == null) {
+                    callback.accept(new Fetcher.FetchResult(item, fromFrontier, uri, 404, "", null, null));
+                    return;
+                }
+                if (isRedirect(response.statusCode) && response.location != null && redirects < MAX_REDIRECTS) {
+                    url = response.location;
+                    ++redirects;
+                    continue;
+                }
+
+                // A conditional GET of the same version.
+                if (response.etag != null && response.etag.equals(headers.get("If-None-Match"))) {
+                    callback.accept(new Fetcher.FetchResult(item, fromFrontier, uri, 304, "", response.etag, null));
+                    return;
+                }
+                callback.accept(new Fetcher.FetchResult(item, fromFrontier, uri, response.statusCode,
+                        readBody(response), response.etag, null));
+                return;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            callback.accept(new Fetcher.FetchResult(item, fromFrontier, null, 0, null, null, e));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The fetches left are not needed, and the channels are closing.
+        executor.shutdownNow();
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return responses.size() + " urls saved, " + pages.size() + " pages";
+    }
+}
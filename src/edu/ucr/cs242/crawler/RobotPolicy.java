@@ -3,11 +3,12 @@ package edu.ucr.cs242.crawler;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLDecoder;
-import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -16,74 +17,130 @@ public class RobotPolicy {
     /**
      * Robots.txt matching pattern.
      */
-    public static final String PATTERN = "User-agent: ([^#]*)|Allow: ([^#]*)|Disallow: ([^#]*)";
+    public static final String PATTERN =
+            "User-agent: ([^#]*)|Allow: ([^#]*)|Disallow: ([^#]*)|Crawl-delay: ([^#]*)";
     private static final Pattern pattern = Pattern.compile(PATTERN, Pattern.CASE_INSENSITIVE);
 
     private String userAgent;
-    // LinkedHashMap keep the insertion order
-    private Map<String, Boolean> accessControlMap = new LinkedHashMap<>();
-    private URL robotURL;
+    // The compiled robots.txt of each host seen.
+    private final Map<String, RobotRules> rulesByHost = new ConcurrentHashMap<>();
 
     public RobotPolicy(String userAgent) {
         this.userAgent = userAgent;
     }
 
+    /**
+     * Get the Crawl-delay of a host for our user agent (milliseconds), 0 if not specified or not yet parsed.
+     */
+    public long getCrawlDelay(String host) {
+        RobotRules rules = rulesByHost.get(host);
+        return rules == null ? 0 : rules.getCrawlDelay();
+    }
+
+    /**
+     * Fetch & compile the robots.txt of the host of a url, unless done before.
+     * @param url The url on the host.
+     * @return Whether the robots.txt is fetched (not found counts). If not, every url on the host is allowed.
+     */
     public boolean parse(URL url) {
+        if (rulesByHost.containsKey(url.getHost()))
+            return true;
+
         HttpURLConnection connection = null;
+        RobotRules rules = new RobotRules();
         try {
-            robotURL = new URL(url, "/robots.txt");
+            URL robotURL = new URL(url, "/robots.txt");
             connection = (HttpURLConnection) robotURL.openConnection();
             connection.setRequestMethod("GET");
             connection.connect();
 
             // Not 200? Assume no robots.txt enforced.
-            if (connection.getResponseCode() != 200)
-                return true;
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            String line;
-            boolean uaMatched = false;
-
-            while ((line = reader.readLine()) != null) {
-                Matcher matcher = pattern.matcher(line.trim());
-                if (matcher.find()) {
-                    // either group 1, 2, 3 is not null.
-                    if (matcher.group(1) != null) {
-                        String regex = createRegexFromWildcard(matcher.group(1).trim());
-                        uaMatched = userAgent.matches(regex);
-                    } else if (uaMatched && matcher.group(2) != null) {
-                        String path = URLDecoder.decode(matcher.group(2), "UTF-8").trim();
-                        accessControlMap.put(path, true);
-                    } else if (uaMatched && matcher.group(3) != null) {
-                        String path = URLDecoder.decode(matcher.group(3), "UTF-8").trim();
-                        accessControlMap.put(path, false);
-                    }
-                }
+            if (connection.getResponseCode() == 200) {
+                rules = compile(new BufferedReader(new InputStreamReader(connection.getInputStream())));
             }
             return true;
         } catch (IOException e) {
             return false;
         } finally {
+            rulesByHost.putIfAbsent(url.getHost(), rules);
             if (connection != null)
                 connection.disconnect();
         }
     }
 
-    public boolean testURL(URL url) {
-        // No robotURL, assume every url is fine.
-        if (robotURL == null)
-            return true;
+    /**
+     * Compile the rules of a robots.txt for our user agent. The groups naming our user agent win over the ones
+     * for `*`; consecutive User-agent lines share a group.
+     * @param reader The content of the robots.txt.
+     * @return The rules.
+     */
+    public RobotRules compile(BufferedReader reader) throws IOException {
+        RobotRules specificRules = new RobotRules();
+        RobotRules wildcardRules = new RobotRules();
+        RobotRules groupRules = null;
+        boolean inAgents = false;
+        boolean specificFound = false;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            Matcher matcher = pattern.matcher(line.trim());
+            if (matcher.find()) {
+                // either group 1, 2, 3, 4 is not null.
+                if (matcher.group(1) != null) {
+                    // A new group starts at the first User-agent line after some rules.
+                    if (!inAgents)
+                        groupRules = null;
+                    inAgents = true;
 
-        // If host matches, check our policy list.
-        if (url.getHost().equals(robotURL.getHost())) {
-            return accessControlMap.entrySet().stream()
-                    .filter(p -> url.getFile().startsWith(p.getKey()))
-                    .map(Map.Entry::getValue)
-                    .findFirst().orElse(true);
+                    String agent = matcher.group(1).trim();
+                    if (!agent.equals("*") && userAgent.matches(createRegexFromWildcard(agent))) {
+                        groupRules = specificRules;
+                        specificFound = true;
+                    } else if (agent.equals("*") && groupRules == null) {
+                        groupRules = wildcardRules;
+                    }
+                    continue;
+                }
+
+                inAgents = false;
+                if (groupRules == null)
+                    continue;
+
+                if (matcher.group(2) != null) {
+                    groupRules.add(URLDecoder.decode(matcher.group(2), "UTF-8").trim(), true);
+                } else if (matcher.group(3) != null) {
+                    groupRules.add(URLDecoder.decode(matcher.group(3), "UTF-8").trim(), false);
+                } else if (matcher.group(4) != null) {
+                    // In seconds, possibly fractional.
+                    try { groupRules.setCrawlDelay(Math.round(Double.parseDouble(matcher.group(4).trim()) * 1000)); }
+                    catch (NumberFormatException e) { /* ignored */ }
+                }
+            }
         }
 
-        // Not the same host, assume allowed.
-        return true;
+        return specificFound ? specificRules : wildcardRules;
+    }
+
+    /**
+     * Get the path of a url to match against the rules, decoded as the rules are.
+     */
+    public static String getPath(URL url) {
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        if (path.indexOf('%') < 0)
+            return path;
+
+        try { return URLDecoder.decode(path, "UTF-8"); }
+        catch (UnsupportedEncodingException | IllegalArgumentException e) { return path; }
+    }
+
+    public boolean testURL(URL url) {
+        RobotRules rules = rulesByHost.get(url.getHost());
+        // Not seen the host before? Fetch its robots.txt first.
+        if (rules == null) {
+            parse(url);
+            rules = rulesByHost.get(url.getHost());
+        }
+        return rules.isAllowed(getPath(url));
     }
 
     private String createRegexFromWildcard(String wildcard) {
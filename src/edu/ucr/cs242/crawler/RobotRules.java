@@ -0,0 +1,238 @@
+package edu.ucr.cs242.crawler;
+
+import java.util.*;
+
+/**
+ * The Allow & Disallow rules of a robots.txt, compiled into a trie over the characters of the paths.
+ * A `*` in a rule matches any sequence of characters, and a `$` at the end anchors the rule to the end of the path.
+ * The rule that decides is the longest one matching the path (Allow wins a tie); a path no rule matches is allowed.
+ * One walk down the trie checks all rules at once, rather than one by one.
+ * A lookup allocates nothing: the children of a node are in sorted arrays, and the sets of active nodes are
+ * arrays kept by each thread, deduplicated by marking the nodes with the step they were added in.
+ */
+public class RobotRules {
+    private static final char[] NO_KEYS = {};
+    private static final Node[] NO_CHILDREN = {};
+
+    private static class Node {
+        // The index of this node within its trie, for marking.
+        private final int id;
+        // The characters to the children, sorted, and the children in the same order.
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        // Whether this node follows a `*`, so that it stays active whatever the character.
+        private final boolean loop;
+        // The node after a `*`.
+        private Node wildcard;
+        // The rules ending here, matching any path with this prefix, or the path ending here (with `$`).
+        private Rule prefixRule;
+        private Rule endRule;
+
+        private Node(int id, boolean loop) {
+            this.id = id;
+            this.loop = loop;
+        }
+
+        private Node child(char ch) {
+            int index = Arrays.binarySearch(keys, ch);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+
+    /**
+     * The sets of active nodes of a lookup, reused by the lookups of a thread over all tries.
+     */
+    private static class Walk {
+        private Node[] active = NO_CHILDREN;
+        private Node[] next = NO_CHILDREN;
+        // The step each node was last added in, by id; a node is in the set of the current step if marked with it.
+        private int[] marks = new int[0];
+        private int step = 0;
+
+        private void reserve(int numOfNodes) {
+            if (marks.length < numOfNodes) {
+                active = new Node[numOfNodes];
+                next = new Node[numOfNodes];
+                marks = new int[numOfNodes];
+                step = 0;
+            }
+        }
+
+        /**
+         * Start a new set of active nodes.
+         */
+        private void nextStep() {
+            if (++step == 0) {
+                // Wrapped around, forget all the marks.
+                Arrays.fill(marks, 0);
+                step = 1;
+            }
+        }
+
+        /**
+         * Add a node to a set of active nodes, together with the nodes following its `*`s, which match the empty
+         * string.
+         * @return The new size of the set.
+         */
+        private int activate(Node[] set, int size, Node node) {
+            for (; node != null; node = node.wildcard) {
+                if (marks[node.id] != step) {
+                    marks[node.id] = step;
+                    set[size++] = node;
+                }
+            }
+            return size;
+        }
+    }
+
+    private static final ThreadLocal<Walk> WALKS = ThreadLocal.withInitial(Walk::new);
+
+    private static class Rule {
+        private final int length;
+        private final boolean allow;
+
+        private Rule(int length, boolean allow) {
+            this.length = length;
+            this.allow = allow;
+        }
+
+        /**
+         * Pick the rule of higher precedence.
+         */
+        private static Rule max(Rule a, Rule b) {
+            if (a == null || b == null)
+                return a == null ? b : a;
+            if (a.length != b.length)
+                return a.length > b.length ? a : b;
+            return a.allow ? a : b;
+        }
+    }
+
+    private int numOfNodes = 0;
+    private final Node root = new Node(numOfNodes++, false);
+    private final Map<String, Boolean> rules = new LinkedHashMap<>();
+    private long crawlDelay = 0;
+
+    /**
+     * Get the Crawl-delay (milliseconds), 0 if not specified.
+     */
+    public long getCrawlDelay() {
+        return crawlDelay;
+    }
+
+    public void setCrawlDelay(long crawlDelay) {
+        this.crawlDelay = crawlDelay;
+    }
+
+    /**
+     * Get the patterns of the rules, each to whether it allows, in the order of the file.
+     */
+    public Map<String, Boolean> getRules() {
+        return Collections.unmodifiableMap(rules);
+    }
+
+    /**
+     * Get the number of rules.
+     */
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * Add a rule.
+     * @param pattern The path pattern, which may contain `*` and end with `$`. An empty one matches nothing.
+     * @param allow   Whether the paths matched are allowed, or disallowed.
+     */
+    public void add(String pattern, boolean allow) {
+        if (pattern.isEmpty())
+            return;
+        // The same pattern twice? Allow wins, as it would on a tie.
+        rules.merge(pattern, allow, Boolean::logicalOr);
+
+        boolean anchored = pattern.endsWith("$");
+        String path = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+        Node node = root;
+
+        for (int i = 0; i < path.length(); i++) {
+            char ch = path.charAt(i);
+            if (ch == '*') {
+                if (node.wildcard == null)
+                    node.wildcard = new Node(numOfNodes++, true);
+                node = node.wildcard;
+            } else {
+                node = addChild(node, ch);
+            }
+        }
+
+        Rule rule = new Rule(pattern.length(), allow);
+        if (anchored)
+            node.endRule = Rule.max(node.endRule, rule);
+        else
+            node.prefixRule = Rule.max(node.prefixRule, rule);
+    }
+
+    /**
+     * Get the child of a node by a character, adding it if not yet there.
+     */
+    private Node addChild(Node node, char ch) {
+        int index = Arrays.binarySearch(node.keys, ch);
+        if (index >= 0)
+            return node.children[index];
+
+        index = -index - 1;
+        Node child = new Node(numOfNodes++, false);
+        char[] keys = new char[node.keys.length + 1];
+        Node[] children = new Node[node.children.length + 1];
+        System.arraycopy(node.keys, 0, keys, 0, index);
+        System.arraycopy(node.children, 0, children, 0, index);
+        keys[index] = ch;
+        children[index] = child;
+        System.arraycopy(node.keys, index, keys, index + 1, node.keys.length - index);
+        System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+        node.keys = keys;
+        node.children = children;
+        return child;
+    }
+
+    /**
+     * Check if a path is allowed.
+     * @param path The path of the url, with the query part if any.
+     * @return Whether the path is allowed.
+     */
+    public boolean isAllowed(String path) {
+        Walk walk = WALKS.get();
+        walk.reserve(numOfNodes);
+        Node[] active = walk.active;
+        Node[] next = walk.next;
+
+        Rule best = null;
+        walk.nextStep();
+        int activeSize = walk.activate(active, 0, root);
+
+        for (int i = 0; i < path.length() && activeSize > 0; i++) {
+            char ch = path.charAt(i);
+            walk.nextStep();
+            int nextSize = 0;
+
+            for (int j = 0; j < activeSize; j++) {
+                Node node = active[j];
+                best = Rule.max(best, node.prefixRule);
+                // A node after `*` may consume the character itself.
+                if (node.loop)
+                    nextSize = walk.activate(next, nextSize, node);
+                nextSize = walk.activate(next, nextSize, node.child(ch));
+            }
+
+            Node[] swap = active;
+            active = next;
+            next = swap;
+            activeSize = nextSize;
+        }
+
+        for (int j = 0; j < activeSize; j++) {
+            best = Rule.max(best, active[j].prefixRule);
+            best = Rule.max(best, active[j].endRule);
+        }
+        return best == null || best.allow;
+    }
+}
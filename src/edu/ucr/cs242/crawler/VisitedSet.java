@@ -0,0 +1,69 @@
+package edu.ucr.cs242.crawler;
+
+/**
+ * The set of urls ever enqueued or crawled. Implementations must be thread-safe.
+ */
+public interface VisitedSet {
+    /**
+     * Add a url.
+     * @param url The url.
+     * @return Whether the url was not in the set.
+     */
+    boolean add(String url);
+
+    /**
+     * Add a url by its fingerprint, when restoring a persisted set.
+     * @param fingerprint The fingerprint of the url.
+     * @return Whether the url was not in the set.
+     * @throws UnsupportedOperationException If the set keeps the urls themselves.
+     */
+    boolean addFingerprint(long fingerprint);
+
+    boolean contains(String url);
+
+    long size();
+
+    /**
+     * Get the approximate memory used.
+     * @return The number of bytes.
+     */
+    long memoryUsage();
+
+    /**
+     * Hash a url into 64 bits (MurmurHash3's finalizer over the chars), so that collisions are
+     * negligible at any crawl size we'd run: about n^2 / 2^65, that is 1.5e-8 for 750k urls.
+     * @param url The url.
+     * @return The fingerprint.
+     */
+    static long fingerprint(String url) {
+        long hash = 0x9E3779B97F4A7C15L ^ url.length();
+        for (int i = 0; i < url.length(); i++) {
+            hash = (hash ^ url.charAt(i)) * 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 29;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Create a visited set.
+     * @param type          One of "hash" (url strings), "fingerprint" (64-bit fingerprints) or "bloom" (Bloom filter).
+     * @param expectedSize  The expected number of urls.
+     * @param falsePositive The false positive rate of the Bloom filter.
+     * @return The visited set.
+     */
+    static VisitedSet create(String type, long expectedSize, double falsePositive) {
+        switch (type) {
+            case "hash":
+                return new HashVisitedSet();
+            case "fingerprint":
+                return new FingerprintVisitedSet(expectedSize);
+            case "bloom":
+                return new BloomVisitedSet(expectedSize, falsePositive);
+            default:
+                throw new IllegalArgumentException("unknown visited set: " + type);
+        }
+    }
+}
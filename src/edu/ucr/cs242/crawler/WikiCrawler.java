@@ -1,251 +1,715 @@
-package edu.ucr.cs242.crawler;
-
-import edu.ucr.cs242.Utility;
-import org.apache.commons.cli.*;
-
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-
-public class WikiCrawler {
-    private final int numOfThreads;
-    private final int numOfPages;
-    private final int crawlDepth;
-    private final int crawlInterval;
-    private final String entryUrl;
-    private final String crawlHostRegex;
-    private final String crawlPathRegex;
-    private final String jdbcUrl;
-
-    private Set<String> visitedUrls = ConcurrentHashMap.newKeySet();
-
-    /**
-     * Construct a crawler with given settings.
-     * @param numOfThreads   The number of threads for crawling.
-     * @param numOfPages     The number of web pages to crawl.
-     * @param crawlDepth     The depth of web pages to crawl.
-     * @param crawlInterval  The interval of crawling next page, limiting the access rate (milliseconds).
-     * @param entryUrl       The url of the entry page.
-     * @param crawlHostRegex The url to be crawled should be within this host.
-     * @param crawlPathRegex The path of the url should start with this prefix.
-     * @param jdbcUrl        The JDBC url to access database.
-     */
-    public WikiCrawler(int numOfThreads, int numOfPages, int crawlDepth, int crawlInterval,
-                       String entryUrl, String crawlHostRegex, String crawlPathRegex,
-                       String jdbcUrl) {
-        this.numOfThreads = numOfThreads;
-        this.numOfPages = numOfPages;
-        this.crawlDepth = crawlDepth;
-        this.crawlInterval = crawlInterval;
-        this.entryUrl = entryUrl;
-        this.crawlHostRegex = crawlHostRegex;
-        this.crawlPathRegex = crawlPathRegex;
-        this.jdbcUrl = jdbcUrl;
-    }
-
-    /**
-     * Start the crawler.
-     */
-    public void start() {
-        RobotPolicy policy = new RobotPolicy("cs242-crawler");
-        try { policy.parse(new URL(entryUrl)); }
-        catch (MalformedURLException e) { /* ignored */ }
-
-        LocalDateTime startAt = LocalDateTime.now();
-        CrawlThread[] threads = new CrawlThread[numOfThreads];
-        AtomicInteger committedCount = new AtomicInteger(0);
-
-        System.out.println("WikiCrawler started at " + startAt.toLocalTime() + ". " +
-                "Pages to crawl: " + numOfPages + ".");
-
-        for (int i = 0; i < numOfThreads; i++) {
-            try {
-                threads[i] = new CrawlThread(i, visitedUrls, Utility.calculatePartition(numOfPages, numOfThreads, i),
-                        crawlDepth, crawlInterval, entryUrl, crawlHostRegex, crawlPathRegex, jdbcUrl, policy);
-                threads[i].setWriterExitListener(committedCount::addAndGet);
-                threads[i].start();
-            } catch (SQLException e) {
-                threads[i] = null;
-                System.out.println("Failed to create thread " + i + ".");
-                e.printStackTrace();
-            }
-        }
-
-        Utility.waitThreads(threads);
-
-        System.out.format("Summary: WikiCrawler committed %d pages in total. ", committedCount.get());
-        System.out.format("Elapsed time: %s.%n", Utility.elapsedTime(startAt, LocalDateTime.now()));
-    }
-
-    /**
-     * Initialize database, creating necessary tables.
-     * @param jdbcUrl The JDBC connection string.
-     * @return Whether the table creation succeeded.
-     */
-    private static boolean initializeDatabase(String jdbcUrl) throws ClassNotFoundException {
-        final String SQL_CREATE =
-                "CREATE TABLE IF NOT EXISTS pages (" +
-                "title TEXT PRIMARY KEY, " +
-                "content TEXT NOT NULL, " +
-                "categories TEXT NOT NULL, " +
-                "lastModify TEXT NOT NULL, " +
-                "outLinks TEXT)";
-
-        // Register the default sqlite driver.
-        Class.forName("org.sqlite.JDBC");
-        try (Connection dbConnection = DriverManager.getConnection(jdbcUrl);
-             Statement query = dbConnection.createStatement()) {
-            query.execute(SQL_CREATE);
-            return true;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
-    }
-
-    private static void printUsage() {
-        System.out.println("usage: crawler [options] <jdbc-url>");
-        System.out.println("use -h for a list of possible options");
-        System.exit(1);
-    }
-
-    private static void printMessage(String message) {
-        System.out.println("crawler: " + message);
-    }
-
-    private static void printHelp(Options options) {
-        HelpFormatter formatter = new HelpFormatter();
-        formatter.printHelp("crawler [options] <jdbc-url>", options);
-        System.out.println();
-    }
-
-    public static void main(String[] args) throws ClassNotFoundException {
-        // Default values
-        final int NUMBER_OF_THREADS = 10;
-        final int NUMBER_OF_PAGES = 750000;
-        final int CRAWL_DEPTH = 10;
-        final int CRAWL_INTERVAL = 5000;
-        final String ENTRY_URL = "https://en.wikipedia.org/wiki/Special:Random";
-        final String CRAWL_HOST_REGEX = "^en.wikipedia.org$";
-        final String CRAWL_PATH_REGEX = "^/wiki/([^:]*)$"; // Special pages (such as Help:Category) are not crawled
-
-        Options options = new Options();
-        options.addOption(Option.builder("t")
-                        .longOpt("threads")
-                        .argName("NUM OF THREADS")
-                        .desc("the number of threads for crawling (default: " + NUMBER_OF_THREADS + ")")
-                        .numberOfArgs(1)
-                        .build());
-
-        options.addOption(Option.builder("c")
-                        .longOpt("pages")
-                        .argName("NUM OF PAGES")
-                        .desc("the number of web pages to crawl (default: " + NUMBER_OF_PAGES + ")")
-                        .numberOfArgs(1)
-                        .build());
-
-        options.addOption(Option.builder("d")
-                        .longOpt("depth")
-                        .argName("DEPTH")
-                        .desc("the depth of web pages to crawl (default: " + CRAWL_DEPTH + ")")
-                        .numberOfArgs(1)
-                        .build());
-
-        options.addOption(Option.builder("i")
-                        .longOpt("interval")
-                        .argName("INTERVAL")
-                        .desc("the interval (milliseconds) of crawling next page, " +
-                                "limiting the access rate (default: " + CRAWL_INTERVAL + ")")
-                        .numberOfArgs(1)
-                        .build());
-
-        options.addOption(Option.builder("u")
-                        .longOpt("entry-url")
-                        .argName("ENTRY URL")
-                        .desc("the url of the entry page (default: " + ENTRY_URL + ")")
-                        .numberOfArgs(1)
-                        .build());
-
-        options.addOption(Option.builder("H")
-                        .longOpt("host-regex")
-                        .argName("HOST REGEX")
-                        .desc("the url to be crawled should be within this host (default: " + CRAWL_HOST_REGEX + ")")
-                        .numberOfArgs(1)
-                        .build());
-
-        options.addOption(Option.builder("P")
-                        .longOpt("path-regex")
-                        .argName("PATH REGEX")
-                        .desc("the path of the url should start with this prefix (default: " + CRAWL_PATH_REGEX + ")")
-                        .numberOfArgs(1)
-                        .build());
-
-        options.addOption(Option.builder("l")
-                        .longOpt("log-output")
-                        .argName("FILE NAME")
-                        .desc("the file to write logs into (default: STDOUT)")
-                        .numberOfArgs(1)
-                        .build());
-
-        options.addOption("h", "help", false, "print a synopsis of standard options");
-
-        try {
-            CommandLine cmd = new DefaultParser().parse(options, args);
-            List<String> argList = cmd.getArgList();
-
-            if (cmd.hasOption("h")) {
-                printHelp(options);
-                System.exit(0);
-            }
-
-            if (argList.isEmpty()) {
-                printMessage("JDBC url is not specified");
-                printUsage();
-            }
-
-            String jdbcUrl = argList.get(0);
-            if (!initializeDatabase(jdbcUrl)) {
-                printMessage("invalid JDBC url");
-                printUsage();
-            }
-
-            String logOutput = cmd.getOptionValue("log-output");
-            if (!Utility.openOutputLog(logOutput)) {
-                printMessage("invalid log file path");
-                printUsage();
-            }
-
-            try {
-                int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
-                int numOfPages = Integer.parseInt(cmd.getOptionValue("pages", String.valueOf(NUMBER_OF_PAGES)));
-                int crawlDepth = Integer.parseInt(cmd.getOptionValue("depth", String.valueOf(CRAWL_DEPTH)));
-                int crawlInterval = Integer.parseInt(cmd.getOptionValue("interval", String.valueOf(CRAWL_INTERVAL)));
-
-                // Test if valid url
-                String entryUrl = new URL(cmd.getOptionValue("entry-url", ENTRY_URL)).toString();
-                String crawlHostRegex = cmd.getOptionValue("host-regex", CRAWL_HOST_REGEX);
-                String crawlPathRegex = cmd.getOptionValue("path-regex", CRAWL_PATH_REGEX);
-
-                new WikiCrawler(numOfThreads, numOfPages, crawlDepth, crawlInterval,
-                        entryUrl, crawlHostRegex, crawlPathRegex, jdbcUrl).start();
-            } catch (NumberFormatException | MalformedURLException e) {
-                printMessage("invalid option(s)");
-                printHelp(options);
-                System.exit(1);
-            }
-        } catch (ParseException e) {
-            // Lower the first letter, which as default is an upper letter.
-            printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
-            printHelp(options);
-            System.exit(1);
-        }
-    }
-}
+package edu.ucr.cs242.crawler;
+
+import edu.ucr.cs242.MetricsRegistry;
+import edu.ucr.cs242.Utility;
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+
+public class WikiCrawler {
+    public static final String USER_AGENT = "cs242-crawler";
+    /**
+     * The number of urls taken from the frontier for each fetch slot, to be scheduled by host.
+     */
+    public static final int URLS_PER_FETCH = 4;
+    /**
+     * The name the metrics are exposed with through JMX.
+     */
+    public static final String METRICS_MBEAN_NAME = "edu.ucr.cs242:type=WikiCrawler";
+
+    private final int numOfThreads;
+    private final int numOfFetches;
+    private final int numOfPages;
+    private final int crawlDepth;
+    private final int crawlInterval;
+    private final String entryUrl;
+    private final String crawlHostRegex;
+    private final String crawlPathRegex;
+    private final String jdbcUrl;
+
+    private final VisitedSet visitedUrls;
+    private final Frontier frontier;
+    private final CrawlState state;
+    private final int checkpointInterval;
+    private final boolean refresh;
+    private final String replayPath;
+    private final Path metricsOutput;
+    private final int metricsInterval;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final LongAdder robotsDeniedCount = metrics.counter("robots_denied");
+
+    /**
+     * Construct a crawler with given settings.
+     * @param numOfThreads       The number of threads for parsing the fetched pages.
+     * @param numOfFetches       The maximum number of pages being fetched or waiting to be parsed at once.
+     * @param numOfPages         The number of web pages to crawl.
+     * @param crawlDepth         The depth of web pages to crawl.
+     * @param crawlInterval      The interval between requests to a host, unless its Crawl-delay is longer (ms).
+     * @param entryUrl           The url of the entry page.
+     * @param crawlHostRegex     The url to be crawled should be within this host.
+     * @param crawlPathRegex     The path of the url should start with this prefix.
+     * @param jdbcUrl            The JDBC url to access database.
+     * @param visitedUrls        The set of urls ever enqueued or crawled.
+     * @param state              The on-disk state of the frontier & visited urls (null for not persisted).
+     * @param checkpointInterval The interval (seconds) of checkpointing the state.
+     * @param refresh            Whether to fetch the stored pages again instead of crawling.
+     * @param replayPath         The saved responses to replay instead of the web (null for the web).
+     * @param metricsOutput      The file to append the metrics to, as JSON lines (null for not dumped).
+     * @param metricsInterval    The interval (seconds) of dumping the metrics.
+     */
+    public WikiCrawler(int numOfThreads, int numOfFetches, int numOfPages, int crawlDepth, int crawlInterval,
+                       String entryUrl, String crawlHostRegex, String crawlPathRegex,
+                       String jdbcUrl, VisitedSet visitedUrls, CrawlState state, int checkpointInterval,
+                       boolean refresh, String replayPath, Path metricsOutput, int metricsInterval) {
+        this.numOfThreads = numOfThreads;
+        this.numOfFetches = numOfFetches;
+        this.numOfPages = numOfPages;
+        this.crawlDepth = crawlDepth;
+        this.crawlInterval = crawlInterval;
+        this.entryUrl = entryUrl;
+        this.crawlHostRegex = crawlHostRegex;
+        this.crawlPathRegex = crawlPathRegex;
+        this.jdbcUrl = jdbcUrl;
+        this.visitedUrls = visitedUrls;
+        this.frontier = new Frontier(visitedUrls, state);
+        this.state = state;
+        this.checkpointInterval = checkpointInterval;
+        this.refresh = refresh;
+        this.replayPath = replayPath;
+        this.metricsOutput = metricsOutput;
+        this.metricsInterval = metricsInterval;
+    }
+
+    private void checkpoint() {
+        LocalDateTime checkpointAt = LocalDateTime.now();
+        try {
+            state.checkpoint();
+            System.out.println("WikiCrawler checkpointed the frontier in " +
+                    Utility.elapsedTime(checkpointAt, LocalDateTime.now()) + ".");
+        } catch (IOException e) {
+            System.out.println("WikiCrawler cannot checkpoint the frontier: " + e.getMessage());
+        }
+    }
+
+    private void dumpMetrics() {
+        try {
+            Files.write(metricsOutput, (metrics.toJson() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.out.println("WikiCrawler cannot dump the metrics: " + e.getMessage());
+        }
+    }
+
+    private static boolean anyAlive(Thread[] threads) {
+        for (Thread thread : threads) {
+            if (thread != null && thread.isAlive())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if a url is allowed by the robots.txt (null policy for allowing all).
+     */
+    private static boolean isAllowed(RobotPolicy policy, String url) {
+        if (policy == null)
+            return true;
+        try { return policy.testURL(new URL(url)); }
+        catch (MalformedURLException e) { return true; }
+    }
+
+    /**
+     * Keep the fetch slots busy with urls from the frontier, each fetched as soon as its host allows,
+     * until enough pages are crawled or no crawl thread is left to parse them.
+     */
+    private void dispatch(RobotPolicy policy, HostScheduler scheduler, Fetcher fetcher,
+                          BlockingQueue<Fetcher.FetchResult> fetchResults, AtomicInteger crawledCount,
+                          CrawlThread[] threads) {
+        // Entry url? No need to run the crawler.
+        if (!isAllowed(policy, entryUrl)) {
+            robotsDeniedCount.increment();
+            System.out.println("WikiCrawler reported the entry url (" + entryUrl + ") is disallowed. Exiting...");
+            return;
+        }
+
+        // The entry url is never put into the frontier, nor marked done.
+        Frontier.QueueItem entryItem = new Frontier.QueueItem(entryUrl, 0);
+
+        while (crawledCount.get() < numOfPages && anyAlive(threads)) {
+            // Time out now and then, to check again if we are done.
+            try {
+                if (!fetcher.acquire(1, TimeUnit.SECONDS))
+                    continue;
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            // Keep a few urls per slot waiting, so that any host ready can be picked.
+            while (scheduler.size() < numOfFetches * URLS_PER_FETCH) {
+                Frontier.QueueItem nextUrl = frontier.poll();
+                if (nextUrl == null)
+                    break;
+
+                // Check if url is restricted by some policies.
+                if (isAllowed(policy, nextUrl.getUrl())) {
+                    scheduler.submit(nextUrl);
+                } else {
+                    robotsDeniedCount.increment();
+                    frontier.done(nextUrl.getUrl());
+                }
+            }
+
+            // The frontier may be empty, at the beginning or since the crawl depth limitation.
+            // If so, crawl the entry url again.
+            if (scheduler.size() == 0)
+                scheduler.submit(entryItem);
+
+            Frontier.QueueItem nextUrl;
+            try { nextUrl = scheduler.poll(1000); }
+            catch (InterruptedException e) { fetcher.release(); break; }
+
+            if (nextUrl == null)
+                fetcher.release();
+            else
+                fetcher.fetch(nextUrl, nextUrl != entryItem, fetchResults);
+        }
+    }
+
+    /**
+     * Fetch the stored pages again, each with a conditional GET, as soon as its host allows.
+     * The pages not modified are not parsed, and the others are updated. No links are followed.
+     */
+    private void refresh(RobotPolicy policy, HostScheduler scheduler, Fetcher fetcher,
+                         BlockingQueue<Fetcher.FetchResult> fetchResults, CrawlThread[] threads,
+                         RefreshSource source) {
+        Map<Frontier.QueueItem, Map<String, String>> validators = new IdentityHashMap<>();
+        URL entry;
+        try { entry = new URL(entryUrl); }
+        catch (MalformedURLException e) { return; }
+
+        try {
+            boolean exhausted = false;
+
+            while (anyAlive(threads)) {
+                if (!fetcher.acquire(1, TimeUnit.SECONDS))
+                    continue;
+
+                while (!exhausted && scheduler.size() < numOfFetches * URLS_PER_FETCH) {
+                    RefreshSource.StoredPage page = source.next();
+                    if (page == null) {
+                        exhausted = true;
+                        break;
+                    }
+
+                    String url;
+                    try {
+                        String path = "/wiki/" + page.getTitle().replace(' ', '_');
+                        url = new URI(entry.getProtocol(), entry.getAuthority(), path, null, null).toASCIIString();
+                    } catch (URISyntaxException e) {
+                        continue;
+                    }
+
+                    // At the depth limit, so that no links are followed.
+                    Frontier.QueueItem item = new Frontier.QueueItem(url, crawlDepth);
+                    if (isAllowed(policy, url)) {
+                        validators.put(item, page.getValidators());
+                        scheduler.submit(item);
+                    } else {
+                        robotsDeniedCount.increment();
+                    }
+                }
+
+                if (exhausted && scheduler.size() == 0) {
+                    fetcher.release();
+                    break;
+                }
+
+                Frontier.QueueItem nextUrl = scheduler.poll(1000);
+                if (nextUrl == null)
+                    fetcher.release();
+                else
+                    fetcher.fetch(nextUrl, false, validators.remove(nextUrl), fetchResults);
+            }
+
+            // Wait for the pages in flight to be parsed.
+            while (anyAlive(threads) && !fetcher.awaitIdle(1, TimeUnit.SECONDS)) { }
+        } catch (SQLException e) {
+            System.out.println("WikiCrawler cannot read the stored pages: " + e.getMessage() + ". Exiting...");
+        } catch (InterruptedException e) {
+            // Stop refreshing.
+        }
+    }
+
+    /**
+     * Start the crawler.
+     */
+    public void start() {
+        // A replay has no robots.txt, nor anyone to be polite to.
+        RobotPolicy policy = replayPath == null ? new RobotPolicy(USER_AGENT) : null;
+        // The robots.txt of a host is parsed before any url of it is scheduled.
+        HostScheduler hostScheduler = new HostScheduler(host ->
+                policy == null ? 0 : Math.max(crawlInterval, policy.getCrawlDelay(host)));
+
+        ReplaySource replaySource = null;
+        if (replayPath != null) {
+            try { replaySource = new ReplaySource(replayPath, entryUrl); }
+            catch (IOException e) {
+                System.out.println("WikiCrawler cannot read the saved responses: " + e.getMessage() + ". Exiting...");
+                return;
+            }
+        }
+
+        // Before the metrics are exposed & dumped, so there is nothing to stop if the resume fails.
+        if (state != null) {
+            String resumeError = null;
+            try { frontier.resume(); }
+            catch (IOException e) { resumeError = e.getMessage(); }
+
+            if (resumeError != null) {
+                System.out.println("WikiCrawler cannot resume the frontier: " + resumeError + ". Exiting...");
+                try { state.close(); }
+                catch (IOException e) { /* ignored */ }
+                if (replaySource != null) {
+                    try { replaySource.close(); }
+                    catch (IOException e) { /* ignored */ }
+                }
+                return;
+            }
+        }
+
+        LocalDateTime startAt = LocalDateTime.now();
+        long startNanos = System.nanoTime();
+        CrawlThread[] threads = new CrawlThread[numOfThreads];
+        AtomicInteger committedCount = new AtomicInteger(0);
+        AtomicInteger crawledCount = new AtomicInteger(0);
+        Fetcher fetcher = new Fetcher(numOfFetches, replaySource != null ? replaySource : new HttpSource(USER_AGENT));
+        BlockingQueue<Fetcher.FetchResult> fetchResults = new LinkedBlockingQueue<>();
+
+        RefreshSource source = null;
+        int pagesToCrawl = numOfPages;
+        if (refresh) {
+            try {
+                source = new RefreshSource(jdbcUrl);
+                pagesToCrawl = source.count();
+            } catch (SQLException e) {
+                System.out.println("WikiCrawler cannot read the stored pages: " + e.getMessage() + ". Exiting...");
+                return;
+            }
+        }
+
+        System.out.println("WikiCrawler started at " + startAt.toLocalTime() + ". " +
+                (refresh ? "Pages to refresh: " : "Pages to crawl: ") + pagesToCrawl + ". " +
+                "Fetches at once: " + numOfFetches + "." +
+                (replaySource != null ? " Replaying " + replaySource + "." : ""));
+
+        metrics.register("fetch", fetcher.getLatency());
+        metrics.gauge("frontier", frontier::size);
+        metrics.gauge("host_waiting", hostScheduler::size);
+        metrics.gauge("in_flight", fetcher::getInFlight);
+        metrics.gauge("fetch_results", fetchResults::size);
+        metrics.gauge("page_queue", () -> Arrays.stream(threads).filter(Objects::nonNull)
+                .mapToLong(CrawlThread::getPageQueueSize).sum());
+        try { metrics.registerMBean(METRICS_MBEAN_NAME); }
+        catch (JMException e) { System.out.println("WikiCrawler cannot expose the metrics: " + e.getMessage()); }
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        if (metricsOutput != null)
+            scheduler.scheduleAtFixedRate(this::dumpMetrics, metricsInterval, metricsInterval, TimeUnit.SECONDS);
+        if (state != null) {
+            scheduler.scheduleWithFixedDelay(this::checkpoint, checkpointInterval, checkpointInterval,
+                    TimeUnit.SECONDS);
+        }
+
+        for (int i = 0; i < numOfThreads; i++) {
+            try {
+                threads[i] = new CrawlThread(i, frontier, fetcher, fetchResults, crawledCount, pagesToCrawl,
+                        crawlDepth, crawlHostRegex, crawlPathRegex, jdbcUrl, metrics);
+                threads[i].setWriterExitListener(committedCount::addAndGet);
+                threads[i].start();
+            } catch (SQLException e) {
+                threads[i] = null;
+                System.out.println("Failed to create thread " + i + ".");
+                e.printStackTrace();
+            }
+        }
+
+        if (refresh) {
+            refresh(policy, hostScheduler, fetcher, fetchResults, threads, source);
+            try { source.close(); }
+            catch (SQLException e) { /* ignored */ }
+        } else {
+            dispatch(policy, hostScheduler, fetcher, fetchResults, crawledCount, threads);
+        }
+
+        // The pages still in flight are not needed, or there is no one to parse them.
+        for (int i = 0; i < numOfThreads; i++) {
+            fetchResults.add(Fetcher.FetchResult.END);
+        }
+        Utility.waitThreads(threads);
+
+        scheduler.shutdownNow();
+        if (metricsOutput != null)
+            dumpMetrics();
+        metrics.unregisterMBean();
+        if (replaySource != null) {
+            try { replaySource.close(); }
+            catch (IOException e) { /* ignored */ }
+        }
+        if (state != null) {
+            try { state.close(); }
+            catch (IOException e) { System.out.println("WikiCrawler cannot close the frontier: " + e.getMessage()); }
+        }
+
+        System.out.println("Summary: Frontier " + frontier + ", host scheduler " + hostScheduler + ".");
+        System.out.format("Summary: Visited set (%s) holds %d urls in %.1f MB.%n",
+                visitedUrls, visitedUrls.size(), visitedUrls.memoryUsage() / 1048576.0);
+        System.out.println("Summary: Fetch latency: " + fetcher.getLatency() + ".");
+        System.out.println("Summary: Metrics: " + metrics.toJson());
+        System.out.format("Summary: WikiCrawler committed %d pages in total (%.1f pages/s). ", committedCount.get(),
+                committedCount.get() * 1e9 / (System.nanoTime() - startNanos));
+        System.out.format("Elapsed time: %s.%n", Utility.elapsedTime(startAt, LocalDateTime.now()));
+    }
+
+    /**
+     * Initialize database, creating necessary tables.
+     * @param jdbcUrl The JDBC connection string.
+     * @return Whether the table creation succeeded.
+     */
+    static boolean initializeDatabase(String jdbcUrl) throws ClassNotFoundException {
+        final String SQL_CREATE =
+                "CREATE TABLE IF NOT EXISTS pages (" +
+                "title TEXT PRIMARY KEY, " +
+                "content TEXT NOT NULL, " +
+                "categories TEXT NOT NULL, " +
+                "lastModify TEXT NOT NULL, " +
+                "outLinks TEXT, " +
+                "etag TEXT, " +
+                "changeSeq INTEGER)";
+
+        // Register the default sqlite driver.
+        Class.forName("org.sqlite.JDBC");
+        try (Connection dbConnection = DriverManager.getConnection(jdbcUrl);
+             Statement query = dbConnection.createStatement()) {
+            // All or nothing, so a migration that died half way is run again, not left with NULL changeSeqs.
+            dbConnection.setAutoCommit(false);
+            try {
+                query.execute(SQL_CREATE);
+
+                // Databases created before the etag & changeSeq columns.
+                boolean hasEtag = false;
+                boolean hasChangeSeq = false;
+                try (ResultSet result = query.executeQuery("PRAGMA table_info(pages)")) {
+                    while (result.next()) {
+                        if ("etag".equalsIgnoreCase(result.getString("name")))
+                            hasEtag = true;
+                        if ("changeSeq".equalsIgnoreCase(result.getString("name")))
+                            hasChangeSeq = true;
+                    }
+                }
+                if (!hasEtag)
+                    query.execute("ALTER TABLE pages ADD COLUMN etag TEXT");
+                if (!hasChangeSeq) {
+                    // The pages stored are numbered by their rowids, the next change goes past them.
+                    query.execute("ALTER TABLE pages ADD COLUMN changeSeq INTEGER");
+                    query.execute("UPDATE pages SET changeSeq = rowid");
+                }
+                // For the writers to find the next changeSeq, and the indexer the pages changed.
+                query.execute("CREATE INDEX IF NOT EXISTS pages_changeSeq ON pages (changeSeq)");
+                dbConnection.commit();
+            } catch (SQLException e) {
+                dbConnection.rollback();
+                throw e;
+            }
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: crawler [options] <jdbc-url>");
+        System.out.println("use -h for a list of possible options");
+        System.exit(1);
+    }
+
+    private static void printMessage(String message) {
+        System.out.println("crawler: " + message);
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("crawler [options] <jdbc-url>", options);
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws ClassNotFoundException {
+        // Default values
+        final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+        final int NUMBER_OF_FETCHES = 10;
+        final int NUMBER_OF_PAGES = 750000;
+        final int CRAWL_DEPTH = 10;
+        final int CRAWL_INTERVAL = 500;
+        final String ENTRY_URL = "https://en.wikipedia.org/wiki/Special:Random";
+        final String CRAWL_HOST_REGEX = "^en.wikipedia.org$";
+        final String CRAWL_PATH_REGEX = "^/wiki/([^:]*)$"; // Special pages (such as Help:Category) are not crawled
+        final String VISITED_SET = "fingerprint";
+        final int URLS_PER_PAGE = 20;
+        final double FALSE_POSITIVE = 0.001;
+        final int CHECKPOINT_INTERVAL = 60;
+        final int METRICS_INTERVAL = 10;
+
+        Options options = new Options();
+        options.addOption(Option.builder("t")
+                        .longOpt("threads")
+                        .argName("NUM OF THREADS")
+                        .desc("the number of threads for parsing the fetched pages (default: " +
+                                NUMBER_OF_THREADS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("f")
+                        .longOpt("fetches")
+                        .argName("NUM OF FETCHES")
+                        .desc("the maximum number of pages being fetched or waiting to be parsed at once " +
+                                "(default: " + NUMBER_OF_FETCHES + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("c")
+                        .longOpt("pages")
+                        .argName("NUM OF PAGES")
+                        .desc("the number of web pages to crawl (default: " + NUMBER_OF_PAGES + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("d")
+                        .longOpt("depth")
+                        .argName("DEPTH")
+                        .desc("the depth of web pages to crawl (default: " + CRAWL_DEPTH + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("i")
+                        .longOpt("interval")
+                        .argName("INTERVAL")
+                        .desc("the interval (milliseconds) between two requests to a host, unless its " +
+                                "Crawl-delay is longer (default: " + CRAWL_INTERVAL + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("u")
+                        .longOpt("entry-url")
+                        .argName("ENTRY URL")
+                        .desc("the url of the entry page (default: " + ENTRY_URL + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("H")
+                        .longOpt("host-regex")
+                        .argName("HOST REGEX")
+                        .desc("the url to be crawled should be within this host (default: " + CRAWL_HOST_REGEX + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("P")
+                        .longOpt("path-regex")
+                        .argName("PATH REGEX")
+                        .desc("the path of the url should start with this prefix (default: " + CRAWL_PATH_REGEX + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("V")
+                        .longOpt("visited-set")
+                        .argName("TYPE")
+                        .desc("the set of visited urls: hash (url strings), fingerprint (64-bit hashes) or " +
+                                "bloom (Bloom filter, may skip unseen urls) (default: " + VISITED_SET + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("E")
+                        .longOpt("expected-urls")
+                        .argName("NUM OF URLS")
+                        .desc("the expected number of distinct urls found, to size the visited set " +
+                                "(default: " + URLS_PER_PAGE + " times the number of pages)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("F")
+                        .longOpt("false-positive")
+                        .argName("RATE")
+                        .desc("the false positive rate of the bloom visited set (default: " + FALSE_POSITIVE + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("S")
+                        .longOpt("state-dir")
+                        .argName("DIRECTORY")
+                        .desc("persist the frontier & visited urls under this directory, " +
+                                "so the crawl can be resumed (default: not persisted)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption("R", "resume", false, "continue from the last checkpoint under --state-dir, " +
+                "instead of starting over");
+
+        options.addOption("U", "refresh", false, "fetch the stored pages again with conditional GETs, " +
+                "updating the ones changed, instead of crawling");
+
+        options.addOption(Option.builder("W")
+                        .longOpt("replay")
+                        .argName("PATH")
+                        .desc("replay the saved responses in this WARC file (or directory of WARC & HTML files) " +
+                                "instead of fetching from the web, with no robots.txt nor politeness delay " +
+                                "(default: the web)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("M")
+                        .longOpt("metrics-output")
+                        .argName("FILE NAME")
+                        .desc("append the metrics to this file as a JSON line every --metrics-interval seconds; " +
+                                "they are exposed through JMX as well (default: not dumped)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("m")
+                        .longOpt("metrics-interval")
+                        .argName("SECONDS")
+                        .desc("the interval of dumping the metrics (default: " + METRICS_INTERVAL + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("k")
+                        .longOpt("checkpoint")
+                        .argName("SECONDS")
+                        .desc("the interval of checkpointing the state (default: " + CHECKPOINT_INTERVAL + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("l")
+                        .longOpt("log-output")
+                        .argName("FILE NAME")
+                        .desc("the file to write logs into (default: STDOUT)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption("h", "help", false, "print a synopsis of standard options");
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            List<String> argList = cmd.getArgList();
+
+            if (cmd.hasOption("h")) {
+                printHelp(options);
+                System.exit(0);
+            }
+
+            if (argList.isEmpty()) {
+                printMessage("JDBC url is not specified");
+                printUsage();
+            }
+
+            String jdbcUrl = argList.get(0);
+            if (!initializeDatabase(jdbcUrl)) {
+                printMessage("invalid JDBC url");
+                printUsage();
+            }
+
+            String logOutput = cmd.getOptionValue("log-output");
+            if (!Utility.openOutputLog(logOutput)) {
+                printMessage("invalid log file path");
+                printUsage();
+            }
+
+            try {
+                int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                int numOfFetches = Integer.parseInt(cmd.getOptionValue("fetches", String.valueOf(NUMBER_OF_FETCHES)));
+                int numOfPages = Integer.parseInt(cmd.getOptionValue("pages", String.valueOf(NUMBER_OF_PAGES)));
+                int crawlDepth = Integer.parseInt(cmd.getOptionValue("depth", String.valueOf(CRAWL_DEPTH)));
+                int crawlInterval = Integer.parseInt(cmd.getOptionValue("interval", String.valueOf(CRAWL_INTERVAL)));
+
+                // Test if valid url
+                String entryUrl = new URL(cmd.getOptionValue("entry-url", ENTRY_URL)).toString();
+                String crawlHostRegex = cmd.getOptionValue("host-regex", CRAWL_HOST_REGEX);
+                String crawlPathRegex = cmd.getOptionValue("path-regex", CRAWL_PATH_REGEX);
+
+                long expectedUrls = Long.parseLong(cmd.getOptionValue("expected-urls",
+                        String.valueOf((long) numOfPages * URLS_PER_PAGE)));
+                double falsePositive = Double.parseDouble(cmd.getOptionValue("false-positive",
+                        String.valueOf(FALSE_POSITIVE)));
+
+                String visitedSet = cmd.getOptionValue("visited-set", VISITED_SET);
+                VisitedSet visitedUrls = VisitedSet.create(visitedSet, expectedUrls, falsePositive);
+                int checkpointInterval = Integer.parseInt(cmd.getOptionValue("checkpoint",
+                        String.valueOf(CHECKPOINT_INTERVAL)));
+
+                if (cmd.hasOption("refresh") && cmd.hasOption("state-dir")) {
+                    printMessage("--refresh does not use --state-dir");
+                    printUsage();
+                }
+                if (cmd.hasOption("resume") && !cmd.hasOption("state-dir")) {
+                    printMessage("--resume requires --state-dir");
+                    printUsage();
+                }
+                // Only the fingerprints are persisted.
+                if (cmd.hasOption("state-dir") && visitedUrls instanceof HashVisitedSet) {
+                    printMessage("the hash visited set cannot be persisted");
+                    printUsage();
+                }
+
+                CrawlState state = null;
+                if (cmd.hasOption("state-dir")) {
+                    try {
+                        state = new CrawlState(Paths.get(cmd.getOptionValue("state-dir")), cmd.hasOption("resume"));
+                    } catch (IOException e) {
+                        printMessage("invalid state directory (" + e.getMessage() + ")");
+                        printUsage();
+                    }
+                }
+
+                int metricsInterval = Integer.parseInt(cmd.getOptionValue("metrics-interval",
+                        String.valueOf(METRICS_INTERVAL)));
+                Path metricsOutput = cmd.hasOption("metrics-output") ?
+                        Paths.get(cmd.getOptionValue("metrics-output")) : null;
+
+                if (numOfThreads <= 0 || numOfFetches <= 0 || metricsInterval <= 0)
+                    throw new IllegalArgumentException("threads, fetches & metrics interval must be positive");
+
+                new WikiCrawler(numOfThreads, numOfFetches, numOfPages, crawlDepth, crawlInterval,
+                        entryUrl, crawlHostRegex, crawlPathRegex, jdbcUrl, visitedUrls,
+                        state, checkpointInterval, cmd.hasOption("refresh"),
+                        cmd.getOptionValue("replay"), metricsOutput, metricsInterval).start();
+            } catch (IllegalArgumentException | MalformedURLException e) {
+                printMessage("invalid option(s)");
+                printHelp(options);
+                System.exit(1);
+            }
+        } catch (ParseException e) {
+            // Lower the first letter, which as default is an upper letter.
+            printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
+            printHelp(options);
+            System.exit(1);
+        }
+    }
+}
@@ -10,6 +10,8 @@ public class WikiPage {
     private LocalDateTime lastModify;
 
     private List<String> outLinks;
+    private String etag;
+    private String url;
 
     public String getTitle() {
         return title;
@@ -31,6 +33,14 @@ public class WikiPage {
         return outLinks;
     }
 
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
     /**
      * Represent a web page in Wikipedia.
      * @param title      The page title.
@@ -38,12 +48,17 @@ public class WikiPage {
      * @param categories The categories the page belongs to.
      * @param lastModify The last modification time of the page.
      * @param outLinks   The outgoing links (titles) in this page.
+     * @param etag       The ETag the server sent with the page (null if none).
+     * @param url        The frontier url the page was crawled from (null if not taken from the frontier).
      */
-    public WikiPage(String title, String content, List<String> categories, LocalDateTime lastModify, List<String> outLinks) {
+    public WikiPage(String title, String content, List<String> categories, LocalDateTime lastModify,
+                    List<String> outLinks, String etag, String url) {
         this.title = title;
         this.content = content;
         this.categories = categories;
         this.lastModify = lastModify;
         this.outLinks = outLinks;
+        this.etag = etag;
+        this.url = url;
     }
 }
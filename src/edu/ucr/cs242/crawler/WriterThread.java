@@ -1,5 +1,7 @@
 package edu.ucr.cs242.crawler;
 
+import edu.ucr.cs242.LatencyHistogram;
+import edu.ucr.cs242.MetricsRegistry;
 import edu.ucr.cs242.OnThreadExitEventListener;
 
 import java.sql.Connection;
@@ -8,8 +10,11 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -21,13 +26,28 @@ public class WriterThread extends Thread {
      */
     public static final int BATCH_WRITE_COUNT = 50;
     /**
-     * The SQL insert statement.
+     * The next change sequence. SQLite runs one write transaction at a time, so it grows in commit order,
+     * and the incremental indexer picks up every page inserted or updated after its last run.
      */
+    private static final String SQL_NEXT_CHANGE_SEQ = "(SELECT IFNULL(MAX(changeSeq), 0) + 1 FROM pages)";
+    /**
+     * The SQL upsert, as an update followed by an insert of the page if it is not there.
+     * (The sqlite of the driver predates INSERT ... ON CONFLICT DO UPDATE.)
+     */
+    public static final String SQL_UPDATE =
+            "UPDATE pages SET content = ?, categories = ?, lastModify = ?, outLinks = ?, etag = ?, " +
+            "changeSeq = " + SQL_NEXT_CHANGE_SEQ + " WHERE title = ?";
     public static final String SQL_INSERT =
-            "INSERT OR IGNORE INTO pages (title, content, categories, lastModify, outLinks) VALUES (?, ?, ?, ?, ?)";
+            "INSERT OR IGNORE INTO pages (content, categories, lastModify, outLinks, etag, changeSeq, title) " +
+            "VALUES (?, ?, ?, ?, ?, " + SQL_NEXT_CHANGE_SEQ + ", ?)";
 
     private final int threadId;
     private final BlockingQueue<WikiPage> pageQueue;
+    private final Frontier frontier;
+    // The frontier urls of the pages in the current batch, marked done once the batch is committed.
+    private final List<String> batchUrls = new ArrayList<>();
+    private final LatencyHistogram batchLatency;
+    private final LongAdder committedTotal;
 
     private Connection dbConnection;
     private OnThreadExitEventListener exitEventListener;
@@ -41,37 +61,69 @@ public class WriterThread extends Thread {
      * @param threadId  The associated thread id.
      * @param jdbcUrl   The JDBC connection string.
      * @param pageQueue The producer-consumer queue.
+     * @param frontier  The frontier, to mark the urls of the pages committed as done.
+     * @param metrics   The metrics of the crawl, shared by all threads.
      * @throws SQLException
      */
-    public WriterThread(int threadId, String jdbcUrl, BlockingQueue<WikiPage> pageQueue) throws SQLException {
+    public WriterThread(int threadId, String jdbcUrl, BlockingQueue<WikiPage> pageQueue, Frontier frontier,
+                        MetricsRegistry metrics) throws SQLException {
         this.threadId = threadId;
         this.pageQueue = pageQueue;
+        this.frontier = frontier;
+        this.batchLatency = metrics.histogram("db_batch");
+        this.committedTotal = metrics.counter("committed");
 
         this.dbConnection = DriverManager.getConnection(jdbcUrl);
         this.dbConnection.setAutoCommit(false);
     }
 
+    /**
+     * Execute the batched upserts and commit them.
+     * @return The number of pages written.
+     */
+    private int commitBatch(PreparedStatement update, PreparedStatement insert) throws SQLException {
+        long startAt = System.nanoTime();
+        int sum = Arrays.stream(update.executeBatch()).sum() + Arrays.stream(insert.executeBatch()).sum();
+        dbConnection.commit();
+        batchLatency.record(System.nanoTime() - startAt);
+        committedTotal.add(sum);
+
+        // Only now are the pages safe, so a resume must not crawl them again.
+        batchUrls.forEach(frontier::done);
+        batchUrls.clear();
+        return sum;
+    }
+
     @Override
     public void run() {
         int bufferedCount = 0;
         int committedCount = 0;
 
         System.out.println("WriterThread " + threadId + " started at " + LocalDateTime.now().toLocalTime() + ".");
-        try (PreparedStatement statement = dbConnection.prepareStatement(SQL_INSERT)) {
+        try (PreparedStatement update = dbConnection.prepareStatement(SQL_UPDATE);
+             PreparedStatement insert = dbConnection.prepareStatement(SQL_INSERT)) {
             while (!Thread.currentThread().isInterrupted()) {
                 try {
                     WikiPage page = pageQueue.take();
 
-                    statement.setString(1, page.getTitle());
-                    statement.setString(2, page.getContent());
-                    statement.setString(3, page.getCategories().stream().collect(Collectors.joining("|")));
-                    statement.setString(4, page.getLastModify().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
-                    statement.setString(5, page.getOutLinks().stream().collect(Collectors.joining("|")));
-                    statement.addBatch();
+                    String lastModify = page.getLastModify().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+
+                    // Both statements take the same parameters, in the same order.
+                    for (PreparedStatement statement : new PreparedStatement[] { update, insert }) {
+                        statement.setString(1, page.getContent());
+                        statement.setString(2, page.getCategories().stream().collect(Collectors.joining("|")));
+                        statement.setString(3, lastModify);
+                        statement.setString(4, page.getOutLinks().stream().collect(Collectors.joining("|")));
+                        statement.setString(5, page.getEtag());
+                        statement.setString(6, page.getTitle());
+                        statement.addBatch();
+                    }
+                    if (page.getUrl() != null)
+                        batchUrls.add(page.getUrl());
 
                     if (++bufferedCount % BATCH_WRITE_COUNT == 0) {
-                        int sum = Arrays.stream(statement.executeBatch()).sum();
-                        dbConnection.commit();
+                        // Either the update or the insert takes effect for a page.
+                        int sum = commitBatch(update, insert);
                         committedCount += sum;
 
                         System.out.format("WriterThread %d committed %d pages. Most recent one: %s.%n",
@@ -83,8 +135,7 @@ public class WriterThread extends Thread {
             }
 
             // The final commit.
-            int sum = Arrays.stream(statement.executeBatch()).sum();
-            dbConnection.commit();
+            int sum = commitBatch(update, insert);
             committedCount += sum;
         } catch (Exception e) {
             System.out.println("WriterThread " + threadId + " throws an exception.");
@@ -0,0 +1,156 @@
+package edu.ucr.cs242.indexing;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Categories as keyword facets. Each category of a page is indexed untokenized, both as a term
+ * (for drill-down) and as a SortedSetDocValues value (for counting).
+ */
+public class CategoryFacets {
+    /**
+     * The field of the untokenized categories.
+     */
+    public static final String FIELD = "category";
+    /**
+     * The separator of categories in the database.
+     */
+    private static final Pattern SEPARATOR = Pattern.compile("\\|");
+
+    /**
+     * Split the categories column of the pages table.
+     * @param categories The categories, separated by |.
+     * @return The non-empty categories.
+     */
+    public static List<String> split(String categories) {
+        return SEPARATOR.splitAsStream(categories)
+                .map(String::trim)
+                .filter(category -> !category.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Add the fields of all categories into a document, reusing the given field instances, and the bytes of
+     * the doc values, which are encoded into the same buffer of a slot for every document.
+     * @param doc         The document, whose category fields are replaced.
+     * @param categories  The categories of the page.
+     * @param keyFields   The reusable term fields; grown when there are more categories than before.
+     * @param facetFields The reusable doc values fields; grown along with keyFields.
+     * @param facetValues The reusable bytes of facetFields, one by one; grown along with keyFields.
+     */
+    public static void setCategories(Document doc, List<String> categories, List<Field> keyFields,
+                                     List<Field> facetFields, List<BytesRefBuilder> facetValues) {
+        doc.removeFields(FIELD);
+
+        for (int i = 0; i < categories.size(); i++) {
+            if (i == keyFields.size()) {
+                keyFields.add(new StringField(FIELD, "", Field.Store.NO));
+                facetValues.add(new BytesRefBuilder());
+                facetFields.add(new SortedSetDocValuesField(FIELD, facetValues.get(i).get()));
+            }
+
+            keyFields.get(i).setStringValue(categories.get(i));
+            facetValues.get(i).copyChars(categories.get(i));
+            // The same BytesRef, whose bytes may have been grown.
+            facetFields.get(i).setBytesValue(facetValues.get(i).get());
+            doc.add(keyFields.get(i));
+            doc.add(facetFields.get(i));
+        }
+    }
+
+    /**
+     * Narrow a query down to the pages in a category.
+     * @param query    The base query.
+     * @param category The exact category name.
+     * @return The drill-down query.
+     */
+    public static Query drillDown(Query query, String category) {
+        return new BooleanQuery.Builder()
+                .add(query, BooleanClause.Occur.MUST)
+                // Filter only, the category does not affect the score.
+                .add(new TermQuery(new Term(FIELD, category)), BooleanClause.Occur.FILTER)
+                .build();
+    }
+
+    /**
+     * Counts by segment ordinal first, and resolves the ordinals into names once per segment.
+     */
+    private static class CountingCollector extends SimpleCollector {
+        private final Map<String, Integer> counts = new HashMap<>();
+        private SortedSetDocValues values;
+        private int[] ordCounts;
+
+        private void resolve() throws IOException {
+            if (values == null)
+                return;
+
+            for (int ord = 0; ord < ordCounts.length; ord++) {
+                if (ordCounts[ord] > 0) {
+                    counts.merge(values.lookupOrd(ord).utf8ToString(), ordCounts[ord], Integer::sum);
+                }
+            }
+            values = null;
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            resolve();
+            values = DocValues.getSortedSet(context.reader(), FIELD);
+            ordCounts = new int[(int) values.getValueCount()];
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            if (values.advanceExact(doc)) {
+                for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd()) {
+                    ++ordCounts[(int) ord];
+                }
+            }
+        }
+
+        @Override
+        public boolean needsScores() {
+            return false;
+        }
+    }
+
+    /**
+     * Count the categories of all pages matching a query, from the doc values.
+     * @param searcher The searcher of the index.
+     * @param query    The query to match pages.
+     * @param topN     The number of the most frequent categories to return.
+     * @return The categories with their counts, in descending order of counts.
+     */
+    public static List<Map.Entry<String, Integer>> count(IndexSearcher searcher, Query query, int topN)
+            throws IOException {
+        CountingCollector collector = new CountingCollector();
+        searcher.search(query, collector);
+        // The last segment is not resolved by doSetNextReader().
+        collector.resolve();
+
+        return collector.counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(topN)
+                .collect(Collectors.toList());
+    }
+}
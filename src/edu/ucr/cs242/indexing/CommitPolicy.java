@@ -0,0 +1,96 @@
+package edu.ucr.cs242.indexing;
+
+import org.apache.lucene.index.IndexWriter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides when the shared IndexWriter should be committed.
+ * A commit is issued when either the docs limit or the time limit is reached, whichever comes first.
+ * In bulk mode, the only commit happens when indexing finishes.
+ */
+public class CommitPolicy {
+    private final int maxDocsPerCommit;
+    private final int maxSecondsPerCommit;
+    private final boolean bulk;
+    private final IndexStats stats;
+
+    private final AtomicInteger uncommittedCount = new AtomicInteger(0);
+    private volatile long lastCommitAt = System.nanoTime();
+    private final ReentrantLock commitLock = new ReentrantLock();
+
+    /**
+     * Construct a commit policy with given settings.
+     * @param maxDocsPerCommit    The maximum number of documents between commits (0 for no limit).
+     * @param maxSecondsPerCommit The maximum number of seconds between commits (0 for no limit).
+     * @param bulk                Whether only a single commit should be issued at the end.
+     * @param stats               The statistics to record commit time into.
+     */
+    public CommitPolicy(int maxDocsPerCommit, int maxSecondsPerCommit, boolean bulk, IndexStats stats) {
+        this.maxDocsPerCommit = maxDocsPerCommit;
+        this.maxSecondsPerCommit = maxSecondsPerCommit;
+        this.bulk = bulk;
+        this.stats = stats;
+    }
+
+    public boolean isBulk() {
+        return bulk;
+    }
+
+    private boolean isDue() {
+        int pending = uncommittedCount.get();
+        if (pending <= 0)
+            return false;
+
+        return (maxDocsPerCommit > 0 && pending >= maxDocsPerCommit) ||
+                (maxSecondsPerCommit > 0 &&
+                        System.nanoTime() - lastCommitAt >= TimeUnit.SECONDS.toNanos(maxSecondsPerCommit));
+    }
+
+    /**
+     * For thread's invoke after it has added some documents to the writer.
+     * At most one thread commits at a time; the others keep indexing instead of queuing up behind it.
+     * @param writer The shared IndexWriter.
+     * @param count  The number of documents added since the last invoke.
+     */
+    public void onDocumentsAdded(IndexWriter writer, int count) throws IOException {
+        uncommittedCount.addAndGet(count);
+        if (bulk || !isDue() || !commitLock.tryLock())
+            return;
+
+        try {
+            // Someone may have committed while we were waiting.
+            if (isDue()) {
+                doCommit(writer);
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Issue the final commit, if there is anything left to commit.
+     * @param writer The shared IndexWriter.
+     */
+    public void finish(IndexWriter writer) throws IOException {
+        commitLock.lock();
+        try {
+            if (writer.hasUncommittedChanges()) {
+                doCommit(writer);
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void doCommit(IndexWriter writer) throws IOException {
+        // Documents added during the commit are counted towards the next one.
+        int pending = uncommittedCount.get();
+        stats.commit(writer);
+        uncommittedCount.addAndGet(-pending);
+        lastCommitAt = System.nanoTime();
+    }
+}
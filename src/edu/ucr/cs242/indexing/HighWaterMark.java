@@ -0,0 +1,115 @@
+package edu.ucr.cs242.indexing;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The position in the pages table up to which the index is known to be up to date.
+ * It is saved in the commit user data of the index, and read back by the next incremental run.
+ *
+ * The crawler sets the changeSeq column of a page to one past the largest one, whenever the page is inserted or
+ * updated. Neither lastModify (the edit time of the article) nor rowid (kept by an update) would do, as a refreshed
+ * page may be older than the mark by both. The writers are serialized by SQLite, so changeSeq grows in commit order.
+ * The column is added by the crawler only; the indexer reads it, and never migrates the database.
+ */
+public class HighWaterMark {
+    /**
+     * The mark before any page, with which every page is selected.
+     */
+    public static final HighWaterMark NONE = new HighWaterMark(0, 0);
+
+    private static final String KEY_CHANGE_SEQ = "pages.changeSeq";
+
+    private final long changeSeq;
+    private final long maxRowId;
+
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public long getMaxRowId() {
+        return maxRowId;
+    }
+
+    /**
+     * Construct a mark.
+     * @param changeSeq The largest changeSeq.
+     * @param maxRowId  The largest rowid, bounding the pages read by a run (not saved in the commit data).
+     */
+    public HighWaterMark(long changeSeq, long maxRowId) {
+        this.changeSeq = changeSeq;
+        this.maxRowId = maxRowId;
+    }
+
+    /**
+     * Get the SQL condition selecting the pages after the mark, to be appended to a WHERE clause.
+     * Empty for NONE, so that a full rebuild reads every page, whatever its changeSeq.
+     * A page without changeSeq is taken as changed at its rowid.
+     */
+    public String sqlCondition() {
+        return this == NONE ? "" : " AND IFNULL(changeSeq, rowid) > ?";
+    }
+
+    /**
+     * Bind the parameter of sqlCondition(), if any.
+     * @param statement The statement containing sqlCondition().
+     * @param index     The parameter index of the ? in sqlCondition().
+     * @return The parameter index following sqlCondition().
+     */
+    public int bind(PreparedStatement statement, int index) throws SQLException {
+        if (this == NONE)
+            return index;
+
+        statement.setLong(index, changeSeq);
+        return index + 1;
+    }
+
+    /**
+     * Read the current mark of the pages table.
+     * @param dbConnection The connection to the database.
+     * @param hasChangeSeq Whether the pages table has the changeSeq column; if not, the mark is before any page.
+     */
+    public static HighWaterMark fetch(Connection dbConnection, boolean hasChangeSeq) throws SQLException {
+        final String SQL_MAX = "SELECT " + (hasChangeSeq ? "IFNULL(MAX(changeSeq), 0)" : "0") + ", " +
+                "MAX(rowid) FROM pages";
+
+        try (Statement query = dbConnection.createStatement();
+             ResultSet result = query.executeQuery(SQL_MAX)) {
+            result.next();
+            return new HighWaterMark(result.getLong(1), result.getLong(2));
+        }
+    }
+
+    /**
+     * Restore a mark from the commit user data of an index.
+     * @param commitData The commit user data.
+     * @return The mark, or NONE if the index has no mark (or one saved before changeSeq).
+     */
+    public static HighWaterMark fromCommitData(Map<String, String> commitData) {
+        try {
+            if (commitData.containsKey(KEY_CHANGE_SEQ)) {
+                return new HighWaterMark(Long.parseLong(commitData.get(KEY_CHANGE_SEQ)), 0);
+            }
+        } catch (NumberFormatException e) {
+            // Treat as no mark.
+        }
+
+        return NONE;
+    }
+
+    public Map<String, String> toCommitData() {
+        Map<String, String> commitData = new HashMap<>();
+        commitData.put(KEY_CHANGE_SEQ, String.valueOf(changeSeq));
+        return commitData;
+    }
+
+    @Override
+    public String toString() {
+        return "changeSeq > " + changeSeq;
+    }
+}
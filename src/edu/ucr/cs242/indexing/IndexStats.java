@@ -0,0 +1,164 @@
+package edu.ucr.cs242.indexing;
+
+import edu.ucr.cs242.Utility;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeScheduler;
+import org.apache.lucene.util.InfoStream;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the time an IndexWriter spends on flushing, committing and merging,
+ * as well as the memory allocated by the index threads and the garbage collections.
+ */
+public class IndexStats {
+    /**
+     * The InfoStream component that reports segment flushes.
+     */
+    private static final String FLUSH_COMPONENT = "DWPT";
+    private static final String FLUSH_PREFIX = "flush time ";
+
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushMicros = new LongAdder();
+    private final LongAdder commitCount = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final LongAdder mergeCount = new LongAdder();
+    private final LongAdder mergeNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private long gcCountAtStart;
+    private long gcMillisAtStart;
+    private long startAt;
+
+    /**
+     * Create an InfoStream that records the segment flushes of the IndexWriter using it.
+     * Lucene only reports flush timings through its InfoStream, so we listen to the DWPT component.
+     * @return The InfoStream to be set on IndexWriterConfig.
+     */
+    public InfoStream newInfoStream() {
+        return new InfoStream() {
+            @Override
+            public void message(String component, String message) {
+                // Something like "flush time 123.456 msec"
+                if (message.startsWith(FLUSH_PREFIX)) {
+                    try {
+                        double millis = Double.parseDouble(message.substring(FLUSH_PREFIX.length(),
+                                message.indexOf(' ', FLUSH_PREFIX.length())));
+                        flushCount.increment();
+                        flushMicros.add((long) (millis * 1000));
+                    } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                        // Not the message we are looking for.
+                    }
+                }
+            }
+
+            @Override
+            public boolean isEnabled(String component) {
+                return FLUSH_COMPONENT.equals(component);
+            }
+
+            @Override
+            public void close() { }
+        };
+    }
+
+    /**
+     * Create a merge scheduler that records the time spent on each merge.
+     * @return The MergeScheduler to be set on IndexWriterConfig.
+     */
+    public MergeScheduler newMergeScheduler() {
+        return new ConcurrentMergeScheduler() {
+            @Override
+            protected void doMerge(IndexWriter writer, MergePolicy.OneMerge merge) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    super.doMerge(writer, merge);
+                } finally {
+                    mergeCount.increment();
+                    mergeNanos.add(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    /**
+     * Commit the writer, and record the time spent.
+     * @param writer The IndexWriter to commit.
+     */
+    public void commit(IndexWriter writer) throws IOException {
+        long start = System.nanoTime();
+        try {
+            writer.commit();
+        } finally {
+            commitCount.increment();
+            commitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    public long getCommitCount() {
+        return commitCount.sum();
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread so far.
+     * @return The number of bytes, or 0 if the JVM does not support measuring it.
+     */
+    public static long currentThreadAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+            if (sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled()) {
+                return sunThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * For thread's invoke of reporting the bytes it has allocated.
+     * @param bytes The number of bytes allocated by the thread.
+     */
+    public void addAllocatedBytes(long bytes) {
+        allocatedBytes.add(bytes);
+    }
+
+    private static long[] collectGarbageCollections() {
+        long count = 0, millis = 0;
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gcBean.getCollectionCount(), 0);
+            millis += Math.max(gcBean.getCollectionTime(), 0);
+        }
+        return new long[] { count, millis };
+    }
+
+    /**
+     * Mark the start of indexing, from which the garbage collections and allocation rate are counted.
+     */
+    public void start() {
+        long[] gc = collectGarbageCollections();
+        gcCountAtStart = gc[0];
+        gcMillisAtStart = gc[1];
+        startAt = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        long[] gc = collectGarbageCollections();
+        double seconds = Math.max(System.nanoTime() - startAt, 1) / 1e9;
+        double allocatedMB = allocatedBytes.sum() / (1024.0 * 1024.0);
+
+        return String.format("%d flushes in %s, %d commits in %s, %d merges in %s; " +
+                        "index threads allocated %.1f MB (%.1f MB/sec); %d GCs in %s",
+                flushCount.sum(), Utility.elapsedTime(Duration.ofNanos(flushMicros.sum() * 1000)),
+                commitCount.sum(), Utility.elapsedTime(Duration.ofNanos(commitNanos.sum())),
+                mergeCount.sum(), Utility.elapsedTime(Duration.ofNanos(mergeNanos.sum())),
+                allocatedMB, allocatedMB / seconds,
+                gc[0] - gcCountAtStart, Utility.elapsedTime(Duration.ofMillis(gc[1] - gcMillisAtStart)));
+    }
+}
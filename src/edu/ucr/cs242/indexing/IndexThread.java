@@ -1,95 +1,171 @@
 package edu.ucr.cs242.indexing;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DoubleDocValuesField;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRefBuilder;
 
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 
+/**
+ * The consumer class, to analyze pages and add them into the index.
+ */
 public class IndexThread extends Thread {
     /**
-     * The number of records to be batch-read per SQL transaction.
+     * The number of records to be indexed between progress reports.
      */
-    public static final int BATCH_READ_COUNT = 50;
+    public static final int BATCH_INDEX_COUNT = 50;
     /**
-     * The SQL query statement.
+     * The untokenized page title, identifying the document for updates.
      */
-    public static final String SQL_QUERY = "SELECT title, content, categories FROM pages LIMIT ? OFFSET ?";
+    public static final String KEY_FIELD = "id";
 
     private final Indexer indexer;
     private final int threadId;
-    private final int pageStartIndex;
-    private final int numOfPages;
-    private final Connection dbConnection;
+    private final BlockingQueue<PageRecord> pageQueue;
     private final IndexWriter indexWriter;
+    private final CommitPolicy commitPolicy;
+    private final boolean incremental;
+    private final boolean reuseDocuments;
+    private final boolean staticRank;
+    private final IndexStats stats;
+
+    // Reused for every page, instead of allocating a Document and its Fields per page.
+    // IndexWriter is done with a document once addDocument() returns, so this is safe within a thread.
+    private final Field keyField = new StringField(KEY_FIELD, "", Field.Store.NO);
+    private final Field titleField = new Field("title", "", TextField.TYPE_STORED);
+    // Content & categories are indexed only, but not stored,
+    // to save the space. We'll fetch the content from our database.
+    private final Field contentField = new Field("content", "", TextField.TYPE_NOT_STORED);
+    private final Field categoriesField = new Field("categories", "", TextField.TYPE_NOT_STORED);
+    private final Field rankField = StaticRank.newField();
+    private final List<Field> categoryKeyFields = new ArrayList<>();
+    private final List<Field> categoryFacetFields = new ArrayList<>();
+    private final List<BytesRefBuilder> categoryFacetValues = new ArrayList<>();
+    private final Document reusableDoc = new Document();
 
     /**
      * Consturct an indexing thread with given settings.
      * @param indexer        The associated indexer.
      * @param threadId       The associated thread id.
-     * @param pageStartIndex The page offset (in the database) to start indexing.
-     * @param numOfPages     The number of pages to index.
-     * @param dbConnection   The connection to the database.
+     * @param pageQueue      The producer-consumer queue.
      * @param indexWriter    The index writer.
+     * @param commitPolicy   The policy deciding when the index writer is committed.
+     * @param incremental    Whether the pages may already be in the index, and should replace the old ones.
+     * @param reuseDocuments Whether a single Document should be reused, rather than allocating one per page.
+     * @param staticRank     Whether the PageRank of pages should be added as doc values.
+     * @param stats          The statistics to record allocation into.
      */
-    public IndexThread(Indexer indexer, int threadId, int pageStartIndex, int numOfPages,
-                       Connection dbConnection, IndexWriter indexWriter) {
+    public IndexThread(Indexer indexer, int threadId, BlockingQueue<PageRecord> pageQueue,
+                       IndexWriter indexWriter, CommitPolicy commitPolicy, boolean incremental,
+                       boolean reuseDocuments, boolean staticRank, IndexStats stats) {
         this.indexer = indexer;
         this.threadId = threadId;
-        this.pageStartIndex = pageStartIndex;
-        this.numOfPages = numOfPages;
-        this.dbConnection = dbConnection;
+        this.pageQueue = pageQueue;
         this.indexWriter = indexWriter;
+        this.commitPolicy = commitPolicy;
+        this.incremental = incremental;
+        this.reuseDocuments = reuseDocuments;
+        this.staticRank = staticRank;
+        this.stats = stats;
+
+        reusableDoc.add(keyField);
+        reusableDoc.add(titleField);
+        reusableDoc.add(contentField);
+        reusableDoc.add(categoriesField);
+        if (staticRank)
+            reusableDoc.add(rankField);
+    }
+
+    private void flushProgress(int localCount) throws IOException {
+        // Nothing is committed after a failure, the writer is going to be rolled back.
+        if (!indexer.hasFailed())
+            commitPolicy.onDocumentsAdded(indexWriter, localCount);
+        indexer.reportProgress(localCount);
+    }
+
+    private Document createDocument(PageRecord page) {
+        if (reuseDocuments) {
+            keyField.setStringValue(page.getTitle());
+            titleField.setStringValue(page.getTitle());
+            contentField.setStringValue(page.getContent());
+            categoriesField.setStringValue(page.getCategories());
+            rankField.setDoubleValue(page.getPageRank());
+            CategoryFacets.setCategories(reusableDoc, CategoryFacets.split(page.getCategories()),
+                    categoryKeyFields, categoryFacetFields, categoryFacetValues);
+            return reusableDoc;
+        }
+
+        Document doc = new Document();
+        doc.add(new StringField(KEY_FIELD, page.getTitle(), Field.Store.NO));
+        doc.add(new Field("title", page.getTitle(), TextField.TYPE_STORED));
+        doc.add(new Field("content", page.getContent(), TextField.TYPE_NOT_STORED));
+        doc.add(new Field("categories", page.getCategories(), TextField.TYPE_NOT_STORED));
+        if (staticRank)
+            doc.add(new DoubleDocValuesField(StaticRank.FIELD, page.getPageRank()));
+        CategoryFacets.setCategories(doc, CategoryFacets.split(page.getCategories()),
+                new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        return doc;
     }
 
     @Override
     public void run() {
-        int indexedCount = 0;
-
-        System.out.println("IndexerThread " + threadId + " started at " + LocalDateTime.now().toLocalTime() + ". " +
-                "Pages to index: " + numOfPages + ".");
-        while (indexedCount < numOfPages) {
-            int localCount = 0;
-
-            try (PreparedStatement statement = dbConnection.prepareStatement(SQL_QUERY)) {
-                statement.setInt(1, Math.min(BATCH_READ_COUNT, numOfPages - indexedCount));
-                statement.setInt(2, pageStartIndex + indexedCount);
-
-                try (ResultSet result = statement.executeQuery()) {
-                    while (result.next()) {
-                        String title = result.getString("title");
-                        String content = result.getString("content");
-                        String categories = result.getString("categories");
-
-                        Document doc = new Document();
-                        doc.add(new Field("title", title, TextField.TYPE_STORED));
-                        // Content & categories are indexed only, but not stored,
-                        // to save the space. We'll fetch the content from our database.
-                        doc.add(new Field("content", content, TextField.TYPE_NOT_STORED));
-                        doc.add(new Field("categories", categories, TextField.TYPE_NOT_STORED));
-                        indexWriter.addDocument(doc);
-
-                        ++localCount;
-                    }
-                }
+        int localCount = 0;
+        long allocatedAtStart = IndexStats.currentThreadAllocatedBytes();
+
+        System.out.println("IndexerThread " + threadId + " started at " + LocalDateTime.now().toLocalTime() + ".");
+        while (true) {
+            try {
+                PageRecord page = pageQueue.take();
+                if (page == PageRecord.END)
+                    break;
+                // Once any thread has failed, only drain the queue, so that the readers never block on it.
+                if (indexer.hasFailed())
+                    continue;
 
-                indexWriter.commit();
+                Document doc = createDocument(page);
+                if (incremental) {
+                    indexWriter.updateDocument(new Term(KEY_FIELD, page.getTitle()), doc);
+                } else {
+                    indexWriter.addDocument(doc);
+                }
 
-                indexedCount += localCount;
-                indexer.reportProgress(localCount);
-            } catch (SQLException e) {
-                System.out.println("IndexerThread " + threadId + " throws an SQLException.");
+                if (++localCount >= BATCH_INDEX_COUNT) {
+                    int count = localCount;
+                    localCount = 0;
+                    flushProgress(count);
+                }
+            } catch (InterruptedException e) {
+                System.out.println("IndexerThread " + threadId + " is interrupted.");
+                indexer.reportFailure();
+                break;
+            } catch (Throwable e) {
+                // E.g. an AlreadyClosedException once the writer hits a tragic error, such as a full disk.
+                // Keep draining the queue, otherwise the readers would block forever.
+                System.out.println("IndexerThread " + threadId + " throws " + e.getClass().getSimpleName() + ".");
                 e.printStackTrace();
-            } catch (IOException e) {
-                System.out.println("IndexerThread " + threadId + " throws an IOException.");
+                indexer.reportFailure();
+            }
+        }
+
+        // The remaining pages since the last report.
+        if (localCount > 0) {
+            try { flushProgress(localCount); }
+            catch (Throwable e) {
+                System.out.println("IndexerThread " + threadId + " throws " + e.getClass().getSimpleName() + ".");
                 e.printStackTrace();
+                indexer.reportFailure();
             }
         }
+
+        stats.addAllocatedBytes(IndexStats.currentThreadAllocatedBytes() - allocatedAtStart);
     }
 }
@@ -6,8 +6,10 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.CharArraySet;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 
@@ -16,50 +18,124 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.*;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Indexer {
+    /**
+     * The name prefix of shard directories, under the index output path.
+     */
+    public static final String SHARD_PREFIX = "shard-";
+
     private final int numOfThreads;
+    private final int numOfReaders;
+    private final int queueSize;
     private final Connection dbConnection;
+    private final String jdbcUrl;
     private final Path indexOutputPath;
+    private final double ramBufferSizeMB;
+    private final IndexStats stats = new IndexStats();
+    private final CommitPolicy commitPolicy;
+    private final boolean incremental;
+    private final boolean sharded;
+    private final boolean reuseDocuments;
+    private final boolean staticRank;
+    private final HighWaterMark since;
+    private final HighWaterMark until;
     private final AtomicInteger indexedCount = new AtomicInteger(0);
+    private volatile boolean failed = false;
     private final int numOfPages;
     private LocalDateTime startAt;
 
     /**
      * Construct an Indexer with given settings.
-     * @param numOfThreads    The number of threads for indexing.
-     * @param dbConnection    The active database connection.
-     * @param indexOutputPath The directory to output the Lucene index.
+     * @param numOfThreads        The number of threads for analyzing & indexing.
+     * @param numOfReaders        The number of threads for reading pages from the database.
+     * @param queueSize           The maximum number of pages read but not yet indexed.
+     * @param dbConnection        The active database connection.
+     * @param jdbcUrl             The JDBC url, for opening the read connections of the readers.
+     * @param indexOutputPath     The directory to output the Lucene index.
+     * @param ramBufferSizeMB     The RAM buffer size (MB) of the index writer, before a segment is flushed.
+     * @param maxDocsPerCommit    The maximum number of documents between commits (0 for no limit).
+     * @param maxSecondsPerCommit The maximum number of seconds between commits (0 for no limit).
+     * @param bulk                Whether only a single commit should be issued at the end.
+     * @param incremental         Whether only the pages changed since the last run should be (re-)indexed.
+     * @param sharded             Whether each index thread should write its own shard, not a shared writer.
+     * @param reuseDocuments      Whether each index thread should reuse a single Document for all its pages.
+     * @param staticRank          Whether the PageRank should be stored as doc values, and the index sorted by it.
      */
-    public Indexer(int numOfThreads, Connection dbConnection, Path indexOutputPath) {
+    public Indexer(int numOfThreads, int numOfReaders, int queueSize, Connection dbConnection, String jdbcUrl,
+                   Path indexOutputPath, double ramBufferSizeMB,
+                   int maxDocsPerCommit, int maxSecondsPerCommit, boolean bulk, boolean incremental,
+                   boolean sharded, boolean reuseDocuments, boolean staticRank) {
         this.numOfThreads = numOfThreads;
+        this.numOfReaders = numOfReaders;
+        this.queueSize = queueSize;
         this.dbConnection = dbConnection;
+        this.jdbcUrl = jdbcUrl;
         this.indexOutputPath = indexOutputPath;
+        this.ramBufferSizeMB = ramBufferSizeMB;
+        this.commitPolicy = new CommitPolicy(maxDocsPerCommit, maxSecondsPerCommit, bulk, stats);
+        this.incremental = incremental;
+        this.sharded = sharded;
+        this.reuseDocuments = reuseDocuments;
+        this.staticRank = staticRank;
+        this.since = incremental ? readHighWaterMark(indexOutputPath) : HighWaterMark.NONE;
+        this.until = fetchHighWaterMark();
 
         numOfPages = fetchPageCount();
         // Check number of pages we have.
-        if (numOfPages <= 0) {
+        if (numOfPages == 0 && incremental) {
+            System.out.println("Indexer finds no pages changed since the last run. Exiting...");
+            System.exit(0);
+        } else if (numOfPages <= 0) {
             System.out.println("Indexer cannot find any pages to index. Exiting...");
             System.exit(numOfPages);
         }
     }
 
+    private static HighWaterMark readHighWaterMark(Path indexOutputPath) {
+        try (Directory directory = FSDirectory.open(indexOutputPath)) {
+            if (DirectoryReader.indexExists(directory)) {
+                return HighWaterMark.fromCommitData(SegmentInfos.readLatestCommit(directory).getUserData());
+            }
+        } catch (IOException e) {
+            System.out.println("Indexer cannot read the last commit, falling back to all pages: " + e.getMessage());
+        }
+
+        return HighWaterMark.NONE;
+    }
+
+    private HighWaterMark fetchHighWaterMark() {
+        try {
+            // Databases crawled before the changeSeq column can still be rebuilt, but not updated incrementally.
+            return HighWaterMark.fetch(dbConnection, hasColumn(dbConnection, "changeSeq"));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return HighWaterMark.NONE;
+        }
+    }
+
     private int fetchPageCount() {
-        final String SQL_COUNT = "SELECT COUNT(*) FROM pages";
+        final String SQL_COUNT = "SELECT COUNT(*) FROM pages WHERE rowid <= ?" + since.sqlCondition();
         int numOfPages = -1;
 
-        try (Statement query = dbConnection.createStatement();
-             ResultSet result = query.executeQuery(SQL_COUNT)) {
-
-            result.next();
-            numOfPages = result.getInt(1);
+        try (PreparedStatement query = dbConnection.prepareStatement(SQL_COUNT)) {
+            query.setLong(1, until.getMaxRowId());
+            since.bind(query, 2);
 
+            try (ResultSet result = query.executeQuery()) {
+                result.next();
+                numOfPages = result.getInt(1);
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -67,17 +143,179 @@ public class Indexer {
         return numOfPages;
     }
 
-    private void startThreads(IndexWriter indexWriter) {
+    /**
+     * Split the pages table into contiguous rowid ranges, one per reader.
+     * Each boundary is located once here, so the readers themselves never need an OFFSET.
+     * @return numOfReaders + 1 boundaries; reader i reads rowid in [bounds[i], bounds[i + 1]).
+     */
+    private long[] fetchPartitionBounds() throws SQLException {
+        final String SQL_ROWID_AT = "SELECT rowid FROM pages WHERE rowid <= ?" + since.sqlCondition() + " " +
+                "ORDER BY rowid LIMIT 1 OFFSET ?";
+        long[] bounds = new long[numOfReaders + 1];
+
+        try (PreparedStatement query = dbConnection.prepareStatement(SQL_ROWID_AT)) {
+            query.setLong(1, until.getMaxRowId());
+            int offsetIndex = since.bind(query, 2);
+            for (int i = 0, pageStartIndex = 0; i < numOfReaders; i++) {
+                query.setInt(offsetIndex, pageStartIndex);
+                try (ResultSet result = query.executeQuery()) {
+                    // An empty partition (more readers than pages) collapses to the end of the table below.
+                    bounds[i] = result.next() ? result.getLong(1) : Long.MAX_VALUE;
+                }
+                pageStartIndex += Utility.calculatePartition(numOfPages, numOfReaders, i);
+            }
+        }
+
+        // Pages inserted after we started are left to the next run.
+        bounds[numOfReaders] = until.getMaxRowId() + 1;
+
+        for (int i = numOfReaders - 1; i >= 0; i--) {
+            bounds[i] = Math.min(bounds[i], bounds[i + 1]);
+        }
+
+        return bounds;
+    }
+
+    private ReaderThread[] startReaders(ReadConnectionPool connectionPool,
+                                        BlockingQueue<PageRecord> pageQueue) throws SQLException {
+        ReaderThread[] readers = new ReaderThread[numOfReaders];
+        long[] bounds = fetchPartitionBounds();
+
+        for (int i = 0; i < numOfReaders; i++) {
+            int partition = Utility.calculatePartition(numOfPages, numOfReaders, i);
+            readers[i] = new ReaderThread(this, i, bounds[i], bounds[i + 1], partition, since,
+                    staticRank, connectionPool, pageQueue);
+            readers[i].start();
+        }
+
+        return readers;
+    }
+
+    /**
+     * Start the readers and the index threads, and wait for them to finish.
+     * @param indexWriters   The index writers, thread i writes into indexWriters[i % indexWriters.length].
+     * @param commitPolicies The commit policies, associated with indexWriters one by one.
+     */
+    private void startThreads(IndexWriter[] indexWriters, CommitPolicy[] commitPolicies) throws SQLException {
+        // Bounded, so the readers are held back when analysis cannot keep up.
+        BlockingQueue<PageRecord> pageQueue = new ArrayBlockingQueue<>(queueSize);
         IndexThread[] threads = new IndexThread[numOfThreads];
 
-        for (int i = 0, pageStartIndex = 0; i < numOfThreads; i++) {
-            int partition = Utility.calculatePartition(numOfPages, numOfThreads, i);
-            threads[i] = new IndexThread(this, i, pageStartIndex, partition, dbConnection, indexWriter);
+        for (int i = 0; i < numOfThreads; i++) {
+            int writerId = i % indexWriters.length;
+            threads[i] = new IndexThread(this, i, pageQueue, indexWriters[writerId], commitPolicies[writerId],
+                    incremental, reuseDocuments, staticRank, stats);
             threads[i].start();
-            pageStartIndex += partition;
         }
 
-        Utility.waitThreads(threads);
+        try (ReadConnectionPool connectionPool = new ReadConnectionPool(jdbcUrl, numOfReaders)) {
+            Utility.waitThreads(startReaders(connectionPool, pageQueue));
+        } finally {
+            // All pages are in the queue, tell every index thread to exit after draining it.
+            for (int i = 0; i < numOfThreads; i++) {
+                try { pageQueue.put(PageRecord.END); }
+                catch (InterruptedException e) { threads[i].interrupt(); }
+            }
+
+            Utility.waitThreads(threads);
+        }
+    }
+
+    /**
+     * Index with one writer per index thread, each into its own shard directory,
+     * then combine the shards into the index output path.
+     * @param analyzer The analyzer for all the writers.
+     */
+    private void startShards(Analyzer analyzer) throws IOException, SQLException {
+        Path[] shardPaths = new Path[numOfThreads];
+        Directory[] shardDirectories = new Directory[numOfThreads];
+        IndexWriter[] shardWriters = new IndexWriter[numOfThreads];
+        CommitPolicy[] shardPolicies = new CommitPolicy[numOfThreads];
+
+        try {
+            for (int i = 0; i < numOfThreads; i++) {
+                shardPaths[i] = Files.createDirectories(indexOutputPath.resolve(SHARD_PREFIX + i));
+                shardDirectories[i] = FSDirectory.open(shardPaths[i]);
+                // Each shard has the whole RAM buffer, so its segments are as large as a shared writer's.
+                shardWriters[i] = new IndexWriter(shardDirectories[i], createConfig(analyzer, ramBufferSizeMB));
+                // A shard is only useful as a whole, thus a single commit at the end.
+                shardPolicies[i] = new CommitPolicy(0, 0, true, stats);
+            }
+
+            startThreads(shardWriters, shardPolicies);
+            // Some pages are missing, the shard writers are rolled back below.
+            if (failed)
+                return;
+
+            for (int i = 0; i < numOfThreads; i++) {
+                shardWriters[i].setLiveCommitData(until.toCommitData().entrySet());
+                shardPolicies[i].finish(shardWriters[i]);
+                shardWriters[i].close();
+                shardWriters[i] = null;
+            }
+
+            LocalDateTime mergeAt = LocalDateTime.now();
+            try (Directory directory = FSDirectory.open(indexOutputPath);
+                 IndexWriter writer = new IndexWriter(directory, createConfig(analyzer, ramBufferSizeMB))) {
+                writer.addIndexes(shardDirectories);
+                writer.setLiveCommitData(until.toCommitData().entrySet());
+                stats.commit(writer);
+            }
+            System.out.println("Summary: Indexer combined " + numOfThreads + " shards. " +
+                    "Elapsed time: " + Utility.elapsedTime(mergeAt, LocalDateTime.now()) + ".");
+        } finally {
+            for (int i = 0; i < numOfThreads; i++) {
+                try {
+                    // Only left open if something went wrong, discard the uncommitted changes.
+                    if (shardWriters[i] != null)
+                        shardWriters[i].rollback();
+                    if (shardDirectories[i] != null)
+                        shardDirectories[i].close();
+                } finally {
+                    // Combined or not, a shard is of no use anymore, and must not be left in the index output path.
+                    if (shardPaths[i] != null)
+                        Utility.deleteDirectory(shardPaths[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read all the pages with the configured readers, without indexing them, and report the read rate.
+     */
+    public void benchmark() {
+        BlockingQueue<PageRecord> pageQueue = new ArrayBlockingQueue<>(queueSize);
+        LongAdder readCount = new LongAdder();
+
+        // Only drain the queue, so the readers are never held back.
+        Thread drainer = new Thread(() -> {
+            try {
+                while (pageQueue.take() != PageRecord.END)
+                    readCount.increment();
+            } catch (InterruptedException e) {
+                // Exiting anyway.
+            }
+        });
+        drainer.start();
+
+        startAt = LocalDateTime.now();
+        System.out.println("Indexer benchmark started at " + startAt.toLocalTime() + ". " +
+                "Pages to read: " + numOfPages + ". Readers: " + numOfReaders + ".");
+
+        try (ReadConnectionPool connectionPool = new ReadConnectionPool(jdbcUrl, numOfReaders)) {
+            Utility.waitThreads(startReaders(connectionPool, pageQueue));
+        } catch (SQLException e) {
+            System.out.println("Indexer throws an SQLException: " + e.getMessage());
+        } finally {
+            try { pageQueue.put(PageRecord.END); }
+            catch (InterruptedException e) { drainer.interrupt(); }
+            Utility.waitThreads(new Thread[] { drainer });
+        }
+
+        Duration elapsed = Duration.between(startAt, LocalDateTime.now());
+        System.out.format("Summary: %d readers read %d pages, %.1f rows/sec. Elapsed time: %s.%n",
+                numOfReaders, readCount.sum(), readCount.sum() * 1000.0 / Math.max(elapsed.toMillis(), 1),
+                Utility.elapsedTime(elapsed));
     }
 
     /**
@@ -93,36 +331,100 @@ public class Indexer {
         }
     }
 
-    public void start() {
-        try {
-            // Create a special analyzer for categories, since they are separated by |.
-            CharArraySet categoryStopWords = CharArraySet.copy(StandardAnalyzer.STOP_WORDS_SET);
-            categoryStopWords.add("|");
+    /**
+     * For thread's invoke of reporting that it failed to read or index some pages.
+     * The final commit is then skipped and the index writers are rolled back.
+     */
+    public void reportFailure() {
+        failed = true;
+    }
+
+    /**
+     * @return Whether any thread has reported a failure.
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    private static Analyzer createAnalyzer() {
+        // Create a special analyzer for categories, since they are separated by |.
+        CharArraySet categoryStopWords = CharArraySet.copy(StandardAnalyzer.STOP_WORDS_SET);
+        categoryStopWords.add("|");
 
-            Map<String, Analyzer> analyzerMap = new HashMap<>();
-            analyzerMap.put("categories", new StandardAnalyzer(categoryStopWords));
+        Map<String, Analyzer> analyzerMap = new HashMap<>();
+        analyzerMap.put("categories", new StandardAnalyzer(categoryStopWords));
 
-            // Fallback to StandardAnalyzer, if field is not specified in analyzerMap.
-            PerFieldAnalyzerWrapper analyzer = new PerFieldAnalyzerWrapper(new StandardAnalyzer(), analyzerMap);
-            Directory directory = FSDirectory.open(indexOutputPath);
+        // Fallback to StandardAnalyzer, if field is not specified in analyzerMap.
+        return new PerFieldAnalyzerWrapper(new StandardAnalyzer(), analyzerMap);
+    }
 
-            IndexWriterConfig config = new IndexWriterConfig(analyzer);
-            IndexWriter writer = new IndexWriter(directory, config);
+    private IndexWriterConfig createConfig(Analyzer analyzer, double ramBufferSizeMB) {
+        IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                // A full run rebuilds the index from scratch.
+                .setOpenMode(incremental ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND :
+                        IndexWriterConfig.OpenMode.CREATE)
+                .setRAMBufferSizeMB(ramBufferSizeMB)
+                // Flush by RAM usage only, never by document count.
+                .setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH)
+                .setMergeScheduler(stats.newMergeScheduler())
+                .setInfoStream(stats.newInfoStream());
+
+        // Every flushed & merged segment is sorted by descending PageRank, so searches can stop early.
+        if (staticRank)
+            config.setIndexSort(StaticRank.INDEX_SORT);
+
+        return config;
+    }
+
+    public void start() {
+        try {
+            Analyzer analyzer = createAnalyzer();
 
             // Now we can start the indexer.
             startAt = LocalDateTime.now();
             System.out.println("Indexer started at " + startAt.toLocalTime() + ". " +
-                    "Pages to index: " + numOfPages + ".");
-
-            startThreads(writer);
+                    "Pages to index: " + numOfPages + "." + (commitPolicy.isBulk() ? " Bulk mode." : "") +
+                    (incremental ? " Incremental mode, pages with " + since + "." : "") +
+                    (sharded ? " Sharded mode." : "") +
+                    (reuseDocuments ? "" : " Allocating a Document per page.") +
+                    (staticRank ? " Sorted by PageRank." : ""));
+            stats.start();
+
+            if (sharded) {
+                startShards(analyzer);
+            } else {
+                try (Directory directory = FSDirectory.open(indexOutputPath)) {
+                    IndexWriter writer = new IndexWriter(directory, createConfig(analyzer, ramBufferSizeMB));
+
+                    try {
+                        startThreads(new IndexWriter[] { writer }, new CommitPolicy[] { commitPolicy });
+
+                        // Some cleanup
+                        // The mark is only moved by the final commit, so that a failed run is redone next time.
+                        if (!failed) {
+                            writer.setLiveCommitData(until.toCommitData().entrySet());
+                            commitPolicy.finish(writer);
+                            writer.close();
+                            writer = null;
+                        }
+                    } finally {
+                        // Only left open if something went wrong, discard the uncommitted changes.
+                        if (writer != null)
+                            writer.rollback();
+                    }
+                }
+            }
 
-            // Some cleanup
-            if (writer.hasUncommittedChanges()) {
-                writer.commit();
+            if (failed) {
+                System.out.println("Indexer failed to read or index some pages. " +
+                        "Uncommitted changes are rolled back, and the high-water mark is left unchanged.");
+            } else {
+                System.out.println("Summary: Indexer spent " + stats + ".");
             }
-            writer.close();
         } catch (IOException e) {
             System.out.println("Indexer throws an IOException: " + e.getMessage());
+        } catch (SQLException e) {
+            System.out.println("Indexer throws an SQLException: " + e.getMessage());
         }
     }
 
@@ -169,17 +471,88 @@ public class Indexer {
         }
     }
 
+    private static boolean hasColumn(Connection dbConnection, String column) throws SQLException {
+        try (Statement query = dbConnection.createStatement();
+             ResultSet result = query.executeQuery("PRAGMA table_info(pages)")) {
+            while (result.next()) {
+                if (column.equalsIgnoreCase(result.getString("name")))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
     public static void main(String args[]) throws SQLException, ClassNotFoundException {
-        final int NUMBER_OF_THREADS = 10;
+        final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+        final int NUMBER_OF_READERS = 2;
+        final int QUEUE_SIZE = 1000;
+        final double RAM_BUFFER_SIZE_MB = 64;
+        final int COMMIT_DOCS = 10000;
+        final int COMMIT_SECONDS = 0;
 
         Options options = new Options();
         options.addOption(Option.builder("t")
                         .longOpt("threads")
                         .argName("NUM OF THREADS")
-                        .desc("the number of threads for indexing (default: " + NUMBER_OF_THREADS + ")")
+                        .desc("the number of threads for analyzing & indexing (default: " + NUMBER_OF_THREADS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("R")
+                        .longOpt("readers")
+                        .argName("NUM OF READERS")
+                        .desc("the number of threads for reading the database (default: " + NUMBER_OF_READERS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("q")
+                        .longOpt("queue-size")
+                        .argName("NUM OF PAGES")
+                        .desc("the maximum number of pages read but not yet indexed (default: " + QUEUE_SIZE + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("r")
+                        .longOpt("ram-buffer")
+                        .argName("SIZE IN MB")
+                        .desc("the RAM buffer size of the index writer (default: " + RAM_BUFFER_SIZE_MB + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("n")
+                        .longOpt("commit-docs")
+                        .argName("NUM OF DOCS")
+                        .desc("the maximum number of documents between commits, 0 for no limit " +
+                                "(default: " + COMMIT_DOCS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("s")
+                        .longOpt("commit-seconds")
+                        .argName("SECONDS")
+                        .desc("the maximum number of seconds between commits, 0 for no limit " +
+                                "(default: " + COMMIT_SECONDS + ")")
                         .numberOfArgs(1)
                         .build());
 
+        options.addOption("b", "bulk", false, "commit only once, after all pages are indexed");
+
+        options.addOption("I", "incremental", false, "only (re-)index the pages modified or inserted " +
+                "since the last run, instead of rebuilding the index");
+
+        options.addOption("S", "sharded", false, "let each index thread write its own shard, " +
+                "and combine the shards at the end (each shard commits once, with a RAM buffer of its own)");
+
+        options.addOption("A", "allocate-documents", false, "allocate a new Document per page, " +
+                "instead of reusing one per thread (to compare allocation rate & GC)");
+
+        options.addOption("P", "page-rank", false, "store the PageRank computed by the pagerank subroutine, " +
+                "and sort the index by it (a full run is needed to turn it on for an existing index)");
+
+        options.addOption("B", "benchmark", false, "only read all pages with the readers and report rows/sec, " +
+                "without indexing (index output path is not required)");
+
         options.addOption(Option.builder("l")
                         .longOpt("log-output")
                         .argName("FILE NAME")
@@ -203,7 +576,8 @@ public class Indexer {
                 printUsage();
             }
 
-            if (argList.size() <= 1) {
+            boolean benchmark = cmd.hasOption("benchmark");
+            if (argList.size() <= 1 && !benchmark) {
                 printMessage("index output path is not specified");
                 printUsage();
             }
@@ -216,11 +590,50 @@ public class Indexer {
 
             try {
                 int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                int numOfReaders = Integer.parseInt(cmd.getOptionValue("readers", String.valueOf(NUMBER_OF_READERS)));
+                int queueSize = Integer.parseInt(cmd.getOptionValue("queue-size", String.valueOf(QUEUE_SIZE)));
+                double ramBufferSizeMB = Double.parseDouble(cmd.getOptionValue("ram-buffer",
+                        String.valueOf(RAM_BUFFER_SIZE_MB)));
+                int maxDocsPerCommit = Integer.parseInt(cmd.getOptionValue("commit-docs", String.valueOf(COMMIT_DOCS)));
+                int maxSecondsPerCommit = Integer.parseInt(cmd.getOptionValue("commit-seconds",
+                        String.valueOf(COMMIT_SECONDS)));
+                boolean bulk = cmd.hasOption("bulk");
+                boolean incremental = cmd.hasOption("incremental");
+                boolean reuseDocuments = !cmd.hasOption("allocate-documents");
+                boolean sharded = cmd.hasOption("sharded");
+                boolean staticRank = cmd.hasOption("page-rank");
+
+                // A page may live in any shard, thus cannot be replaced in place.
+                if (incremental && sharded) {
+                    printMessage("incremental mode cannot be combined with sharded mode");
+                    printUsage();
+                }
+                // A shard is only useful as a whole, thus committed once at the end.
+                if (sharded && (cmd.hasOption("commit-docs") || cmd.hasOption("commit-seconds"))) {
+                    printMessage("--commit-docs & --commit-seconds cannot be combined with sharded mode");
+                    printUsage();
+                }
 
                 Optional<Connection> dbConnection = getConnection(argList.get(0));
                 if (!dbConnection.isPresent()) {
                     printMessage("invalid JDBC url");
                     printUsage();
+                } else if (staticRank && !hasColumn(dbConnection.get(), "pageRank")) {
+                    // The column is only added by the pagerank subroutine.
+                    printMessage("pages have no PageRank yet, run the pagerank subroutine before using --page-rank");
+                    dbConnection.get().close();
+                    printUsage();
+                } else if (incremental && !hasColumn(dbConnection.get(), "changeSeq")) {
+                    // The column is only added by the crawler, the indexer does not migrate the database.
+                    printMessage("pages have no changeSeq yet, run the crawler on the database before using " +
+                            "--incremental");
+                    dbConnection.get().close();
+                    printUsage();
+                } else if (benchmark) {
+                    new Indexer(numOfThreads, numOfReaders, queueSize, dbConnection.get(), argList.get(0), null,
+                            ramBufferSizeMB, maxDocsPerCommit, maxSecondsPerCommit, bulk,
+                            false, false, true, staticRank).benchmark();
+                    dbConnection.get().close();
                 } else {
                     Path indexOutputPath = Paths.get(argList.get(1));
                     if (!Files.exists(indexOutputPath) || !Files.isDirectory(indexOutputPath)) {
@@ -228,7 +641,9 @@ public class Indexer {
                         printUsage();
                     }
 
-                    new Indexer(numOfThreads, dbConnection.get(), indexOutputPath).start();
+                    new Indexer(numOfThreads, numOfReaders, queueSize, dbConnection.get(), argList.get(0),
+                            indexOutputPath, ramBufferSizeMB, maxDocsPerCommit, maxSecondsPerCommit, bulk,
+                            incremental, sharded, reuseDocuments, staticRank).start();
                     dbConnection.get().close();
                 }
             } catch (NumberFormatException e) {
@@ -0,0 +1,46 @@
+package edu.ucr.cs242.indexing;
+
+/**
+ * A page read from the database, waiting to be indexed.
+ */
+public class PageRecord {
+    /**
+     * The end-of-stream marker, one for each IndexThread.
+     */
+    public static final PageRecord END = new PageRecord(null, null, null, 0);
+
+    private final String title;
+    private final String content;
+    private final String categories;
+    private final double pageRank;
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public String getCategories() {
+        return categories;
+    }
+
+    public double getPageRank() {
+        return pageRank;
+    }
+
+    /**
+     * Represent a row of the pages table.
+     * @param title      The page title.
+     * @param content    The page content.
+     * @param categories The categories the page belongs to, separated by |.
+     * @param pageRank   The static score of the page (0 if not read).
+     */
+    public PageRecord(String title, String content, String categories, double pageRank) {
+        this.title = title;
+        this.content = content;
+        this.categories = categories;
+        this.pageRank = pageRank;
+    }
+}
@@ -0,0 +1,93 @@
+package edu.ucr.cs242.indexing;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed-size pool of read-only SQLite connections.
+ * The sqlite-jdbc driver serializes all work on a single connection,
+ * so every concurrent reader should hold its own one.
+ */
+public class ReadConnectionPool implements AutoCloseable {
+    /**
+     * The size of the memory-mapped region of the database file (bytes).
+     */
+    public static final long MMAP_SIZE = 1L << 30;
+    /**
+     * The page cache size of each connection (KiB).
+     */
+    public static final int CACHE_SIZE = 64 * 1024;
+    /**
+     * The SQLITE_OPEN_READONLY flag, see https://www.sqlite.org/c3ref/open.html.
+     */
+    private static final int SQLITE_OPEN_READONLY = 0x00000001;
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final BlockingQueue<Connection> idleConnections;
+
+    /**
+     * Open a pool of read-only connections.
+     * @param jdbcUrl The JDBC connection string.
+     * @param size    The number of connections to open.
+     * @throws SQLException
+     */
+    public ReadConnectionPool(String jdbcUrl, int size) throws SQLException {
+        idleConnections = new ArrayBlockingQueue<>(Math.max(size, 1));
+
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", String.valueOf(SQLITE_OPEN_READONLY));
+
+        try {
+            for (int i = 0; i < size; i++) {
+                Connection connection = DriverManager.getConnection(jdbcUrl, properties);
+                connections.add(connection);
+
+                try (Statement pragma = connection.createStatement()) {
+                    pragma.execute("PRAGMA query_only = ON");
+                    pragma.execute("PRAGMA mmap_size = " + MMAP_SIZE);
+                    // Negative value means the size is in KiB, rather than in pages.
+                    pragma.execute("PRAGMA cache_size = -" + CACHE_SIZE);
+                    pragma.execute("PRAGMA temp_store = MEMORY");
+                }
+
+                idleConnections.add(connection);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Take a connection from the pool, waiting if all of them are in use.
+     * @return The connection, which should be released after use.
+     */
+    public Connection acquire() throws InterruptedException {
+        return idleConnections.take();
+    }
+
+    /**
+     * Return a connection to the pool.
+     * @param connection The connection obtained by acquire().
+     */
+    public void release(Connection connection) {
+        idleConnections.offer(connection);
+    }
+
+    @Override
+    public void close() {
+        for (Connection connection : connections) {
+            try { connection.close(); }
+            catch (SQLException e) { e.printStackTrace(); }
+        }
+        connections.clear();
+        idleConnections.clear();
+    }
+}
@@ -0,0 +1,119 @@
+package edu.ucr.cs242.indexing;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The producer class, to read pages from database.
+ */
+public class ReaderThread extends Thread {
+    /**
+     * The number of records to be fetched from the database per round trip.
+     */
+    public static final int BATCH_READ_COUNT = 50;
+    /**
+     * The rows read, shared by SQL_QUERY & SQL_QUERY_RANKED. Rows are streamed in rowid order within [?, ?),
+     * so each thread only walks its own part of the table once, instead of re-scanning an ever-growing OFFSET.
+     * The condition of the high-water mark and the ORDER BY are appended when the query is prepared.
+     */
+    private static final String SQL_ROWS = " FROM pages WHERE rowid >= ? AND rowid < ?";
+    /**
+     * The SQL query statement.
+     */
+    public static final String SQL_QUERY = "SELECT title, content, categories" + SQL_ROWS;
+    /**
+     * Same as SQL_QUERY, along with the PageRank written by the pagerank subroutine.
+     */
+    public static final String SQL_QUERY_RANKED = "SELECT title, content, categories, pageRank" + SQL_ROWS;
+
+    private final Indexer indexer;
+    private final int threadId;
+    private final long rowIdStart;
+    private final long rowIdEnd;
+    private final int numOfPages;
+    private final HighWaterMark since;
+    private final boolean staticRank;
+    private final ReadConnectionPool connectionPool;
+    private final BlockingQueue<PageRecord> pageQueue;
+
+    /**
+     * Construct a reader thread with given settings.
+     * @param indexer        The associated indexer.
+     * @param threadId       The associated thread id.
+     * @param rowIdStart     The first rowid (inclusive) of the partition to read.
+     * @param rowIdEnd       The last rowid (exclusive) of the partition to read.
+     * @param numOfPages     The number of pages in the partition.
+     * @param since          The high-water mark, only pages after which are read.
+     * @param staticRank     Whether the pageRank column should be read as well.
+     * @param connectionPool The pool to obtain a database connection from.
+     * @param pageQueue      The producer-consumer queue.
+     */
+    public ReaderThread(Indexer indexer, int threadId, long rowIdStart, long rowIdEnd, int numOfPages,
+                        HighWaterMark since, boolean staticRank, ReadConnectionPool connectionPool,
+                        BlockingQueue<PageRecord> pageQueue) {
+        this.indexer = indexer;
+        this.threadId = threadId;
+        this.rowIdStart = rowIdStart;
+        this.rowIdEnd = rowIdEnd;
+        this.numOfPages = numOfPages;
+        this.since = since;
+        this.staticRank = staticRank;
+        this.connectionPool = connectionPool;
+        this.pageQueue = pageQueue;
+    }
+
+    @Override
+    public void run() {
+        int readCount = 0;
+
+        System.out.println("ReaderThread " + threadId + " started at " + LocalDateTime.now().toLocalTime() + ". " +
+                "Pages to read: " + numOfPages + ".");
+        Connection dbConnection = null;
+        try {
+            dbConnection = connectionPool.acquire();
+
+            try (PreparedStatement statement = dbConnection.prepareStatement(
+                    (staticRank ? SQL_QUERY_RANKED : SQL_QUERY) + since.sqlCondition() + " ORDER BY rowid")) {
+                statement.setLong(1, rowIdStart);
+                statement.setLong(2, rowIdEnd);
+                since.bind(statement, 3);
+                statement.setFetchSize(BATCH_READ_COUNT);
+
+                try (ResultSet result = statement.executeQuery()) {
+                    // Stop early once any thread has failed, the run is going to be rolled back anyway.
+                    while (!indexer.hasFailed() && result.next()) {
+                        // Blocks when the index threads fall behind.
+                        // A NULL pageRank, i.e. a page crawled after the ranks were computed, reads as 0.
+                        pageQueue.put(new PageRecord(result.getString("title"),
+                                result.getString("content"), result.getString("categories"),
+                                staticRank ? result.getDouble("pageRank") : 0));
+                        ++readCount;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("ReaderThread " + threadId + " throws an SQLException.");
+            e.printStackTrace();
+            indexer.reportFailure();
+        } catch (InterruptedException e) {
+            System.out.println("ReaderThread " + threadId + " is interrupted.");
+            indexer.reportFailure();
+        } catch (RuntimeException e) {
+            System.out.println("ReaderThread " + threadId + " throws " + e.getClass().getSimpleName() + ".");
+            e.printStackTrace();
+            indexer.reportFailure();
+        } finally {
+            if (dbConnection != null)
+                connectionPool.release(dbConnection);
+        }
+
+        if (readCount != numOfPages) {
+            System.out.println("ReaderThread " + threadId + " read " + readCount + " pages, " +
+                    "but " + numOfPages + " were expected.");
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package edu.ucr.cs242.indexing;
+
+import org.apache.lucene.document.DoubleDocValuesField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.*;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * The static quality score of pages (the PageRank from the pages table), as a doc values field the index is
+ * sorted by. With the best pages first in every segment, the top hits of a query are mostly found among its
+ * first matches, so collection can stop early.
+ */
+public class StaticRank {
+    /**
+     * The field of the static score.
+     */
+    public static final String FIELD = "pageRank";
+    /**
+     * The index sort, by descending static score. Pages without a score sort last.
+     */
+    public static final Sort INDEX_SORT = new Sort(newSortField());
+
+    private static SortField newSortField() {
+        SortField sortField = new SortField(FIELD, SortField.Type.DOUBLE, true);
+        sortField.setMissingValue(0.0);
+        return sortField;
+    }
+
+    public static Field newField() {
+        return new DoubleDocValuesField(FIELD, 0);
+    }
+
+    /**
+     * Whether a segment is sorted by the static score, thus can be terminated early.
+     */
+    public static boolean isSorted(LeafReader reader) {
+        return INDEX_SORT.equals(reader.getMetaData().getSort());
+    }
+
+    /**
+     * Collects the top hits by BM25 plus the weighted static score, and stops a sorted segment after
+     * a number of matches. The static scores sum up to 1, thus are scaled by the number of documents,
+     * so an average page gets log(2).
+     */
+    private static class RankCollector extends SimpleCollector {
+        private final int numHits;
+        private final float weight;
+        private final double scale;
+        private final int depth;
+        // A min-heap, the worst hit on top. Among equal scores, the later document is worse.
+        private final PriorityQueue<ScoreDoc> queue = new PriorityQueue<>(
+                Comparator.comparingDouble((ScoreDoc hit) -> hit.score).thenComparing(hit -> -hit.doc));
+        private long totalHits = 0;
+        private Scorer scorer;
+        private NumericDocValues ranks;
+        private int docBase;
+        private boolean sorted;
+        private int leafCount;
+
+        RankCollector(int numHits, float weight, double scale, int depth) {
+            this.numHits = numHits;
+            this.weight = weight;
+            this.scale = scale;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            docBase = context.docBase;
+            ranks = DocValues.getNumeric(context.reader(), FIELD);
+            sorted = isSorted(context.reader());
+            leafCount = 0;
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) {
+            this.scorer = scorer;
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            ++totalHits;
+            float score = scorer.score();
+            if (weight != 0) {
+                double rank = ranks.advanceExact(doc) ? Double.longBitsToDouble(ranks.longValue()) : 0;
+                score += (float) (weight * Math.log1p(rank * scale));
+            }
+
+            if (queue.size() < numHits) {
+                queue.add(new ScoreDoc(docBase + doc, score));
+            } else if (score > queue.peek().score) {
+                queue.poll();
+                queue.add(new ScoreDoc(docBase + doc, score));
+            }
+
+            // The rest of the segment has lower static scores, and most likely will not make it.
+            if (sorted && depth > 0 && ++leafCount >= depth)
+                throw new CollectionTerminatedException();
+        }
+
+        @Override
+        public boolean needsScores() {
+            return true;
+        }
+
+        private TopDocs topDocs() {
+            ScoreDoc[] hits = new ScoreDoc[queue.size()];
+            for (int i = hits.length - 1; i >= 0; i--) {
+                hits[i] = queue.poll();
+            }
+            return new TopDocs(totalHits, hits, hits.length > 0 ? hits[0].score : Float.NaN);
+        }
+    }
+
+    /**
+     * Search the top hits, ranked by BM25 plus the weighted static score. Segments are searched in parallel
+     * if the searcher has an executor.
+     * @param searcher The searcher of the index.
+     * @param query    The query.
+     * @param numHits  The number of top hits to return.
+     * @param weight   The weight of the log-scaled static score (0 for BM25 only).
+     * @param depth    The number of matches collected per sorted segment (0 for all matches).
+     *                 When a segment is cut short, totalHits is only a lower bound.
+     * @return The top hits.
+     */
+    public static TopDocs search(IndexSearcher searcher, Query query, int numHits, float weight, int depth)
+            throws IOException {
+        double scale = searcher.getIndexReader().maxDoc();
+        // Never stop before the page is filled.
+        int leafDepth = depth > 0 ? Math.max(depth, numHits) : 0;
+
+        return searcher.search(query, new CollectorManager<RankCollector, TopDocs>() {
+            @Override
+            public RankCollector newCollector() {
+                return new RankCollector(numHits, weight, scale, leafDepth);
+            }
+
+            @Override
+            public TopDocs reduce(Collection<RankCollector> collectors) {
+                return TopDocs.merge(numHits, collectors.stream().map(RankCollector::topDocs).toArray(TopDocs[]::new));
+            }
+        });
+    }
+}
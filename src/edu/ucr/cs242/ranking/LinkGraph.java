@@ -0,0 +1,150 @@
+package edu.ucr.cs242.ranking;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * The link graph between crawled pages, in compressed sparse row form, indexed by the destination.
+ * For page v, the pages linking to it are inSources[inOffsets[v] .. inOffsets[v + 1]).
+ * The edges are kept off-heap, so the heap only holds a few ints per page.
+ */
+public class LinkGraph {
+    private static final Pattern SEPARATOR = Pattern.compile("\\|");
+
+    private final int numOfNodes;
+    private final int[] outDegrees;
+    private final int[] inOffsets;
+    private final IntBuffer inSources;
+
+    public int getNumOfNodes() {
+        return numOfNodes;
+    }
+
+    public int getNumOfEdges() {
+        return inOffsets[numOfNodes];
+    }
+
+    public int getOutDegree(int node) {
+        return outDegrees[node];
+    }
+
+    public int getInStart(int node) {
+        return inOffsets[node];
+    }
+
+    public int getInEnd(int node) {
+        return inOffsets[node + 1];
+    }
+
+    /**
+     * Get a source of the in-links. Safe to be called from many threads at once.
+     * @param index The index within [getInStart(v), getInEnd(v)) of some page v.
+     * @return The page linking to v.
+     */
+    public int getInSource(int index) {
+        return inSources.get(index);
+    }
+
+    private LinkGraph(int numOfNodes, int[] outDegrees, int[] inOffsets, IntBuffer inSources) {
+        this.numOfNodes = numOfNodes;
+        this.outDegrees = outDegrees;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+    }
+
+    /**
+     * Resolve the outLinks column into distinct page ids. Links to pages not crawled are dropped, so are self-links.
+     */
+    private static int[] resolveLinks(TitleDictionary dictionary, int source, String outLinks) {
+        if (outLinks == null || outLinks.isEmpty())
+            return new int[0];
+
+        int[] targets = SEPARATOR.splitAsStream(outLinks)
+                .mapToInt(dictionary::lookup)
+                .filter(target -> target >= 0 && target != source)
+                .sorted().distinct().toArray();
+        return targets;
+    }
+
+    /**
+     * Build the graph by streaming the pages table twice: once here, and once over the resolved edges.
+     * The first pass spills the resolved edges into a temporary file, so the outLinks are parsed only once.
+     * @param dbConnection The connection to the database.
+     * @param dictionary   The ids of all pages.
+     */
+    public static LinkGraph build(Connection dbConnection, TitleDictionary dictionary)
+            throws SQLException, IOException {
+        final String SQL_QUERY = "SELECT title, outLinks FROM pages";
+        int numOfNodes = dictionary.size();
+        int[] outDegrees = new int[numOfNodes];
+        // In-degrees first, then turned into offsets.
+        int[] inOffsets = new int[numOfNodes + 1];
+        long numOfEdges = 0;
+
+        Path edgeFile = Files.createTempFile("pagerank-edges", ".bin");
+        try {
+            // Pass 1: resolve titles, count degrees, and spill the edges as (source, count, targets...).
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(edgeFile), 1 << 16));
+                 Statement query = dbConnection.createStatement();
+                 ResultSet result = query.executeQuery(SQL_QUERY)) {
+
+                while (result.next()) {
+                    int source = dictionary.lookup(result.getString("title"));
+                    // Crawled after the titles were loaded, thus left to the next run.
+                    if (source < 0)
+                        continue;
+
+                    int[] targets = resolveLinks(dictionary, source, result.getString("outLinks"));
+
+                    outDegrees[source] = targets.length;
+                    output.writeInt(source);
+                    output.writeInt(targets.length);
+                    for (int target : targets) {
+                        ++inOffsets[target + 1];
+                        output.writeInt(target);
+                    }
+                    numOfEdges += targets.length;
+                }
+            }
+
+            if (numOfEdges > Integer.MAX_VALUE / Integer.BYTES)
+                throw new IllegalStateException("too many edges for a single buffer: " + numOfEdges);
+
+            for (int i = 0; i < numOfNodes; i++) {
+                inOffsets[i + 1] += inOffsets[i];
+            }
+
+            // Pass 2: place every edge under its target.
+            IntBuffer inSources = ByteBuffer.allocateDirect((int) numOfEdges * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            int[] cursors = Arrays.copyOf(inOffsets, numOfNodes);
+
+            try (DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(edgeFile), 1 << 16))) {
+                for (long read = 0; read < numOfEdges; ) {
+                    int source = input.readInt();
+                    int count = input.readInt();
+                    for (int i = 0; i < count; i++) {
+                        inSources.put(cursors[input.readInt()]++, source);
+                    }
+                    read += count;
+                }
+            }
+
+            return new LinkGraph(numOfNodes, outDegrees, inOffsets, inSources);
+        } finally {
+            Files.deleteIfExists(edgeFile);
+        }
+    }
+}
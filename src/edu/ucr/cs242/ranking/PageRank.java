@@ -0,0 +1,415 @@
+package edu.ucr.cs242.ranking;
+
+import edu.ucr.cs242.Utility;
+import org.apache.commons.cli.*;
+
+import java.io.IOException;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+public class PageRank {
+    /**
+     * The number of pages a fork-join task handles without splitting further.
+     */
+    public static final int TASK_THRESHOLD = 4096;
+    /**
+     * The number of pages updated per transaction, when writing the scores back.
+     */
+    public static final int BATCH_UPDATE_COUNT = 10000;
+
+    private final int numOfThreads;
+    private final int maxIterations;
+    private final double tolerance;
+    private final double damping;
+    private final boolean writeBack;
+    private final Connection dbConnection;
+
+    private LinkGraph graph;
+    // The rank & contribution (rank / out-degree) of the current iteration, and of the next one.
+    private double[] ranks;
+    private double[] nextRanks;
+    private double[] contributions;
+    private double[] nextContributions;
+    // The base rank every page receives, from teleporting and from the dangling pages.
+    private double baseRank;
+
+    /**
+     * Construct a PageRank calculator with given settings.
+     * @param numOfThreads  The number of threads for the iterations.
+     * @param maxIterations The maximum number of iterations.
+     * @param tolerance     The L1 difference between two iterations below which the ranks are considered converged.
+     * @param damping       The damping factor, i.e., the probability of following a link instead of teleporting.
+     * @param writeBack     Whether to write the scores back into the pageRank column.
+     * @param dbConnection  The active database connection.
+     */
+    public PageRank(int numOfThreads, int maxIterations, double tolerance, double damping, boolean writeBack,
+                    Connection dbConnection) {
+        this.numOfThreads = numOfThreads;
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+        this.damping = damping;
+        this.writeBack = writeBack;
+        this.dbConnection = dbConnection;
+    }
+
+    /**
+     * One iteration over the pages [from, to). Pulls the contributions along the in-links of every page,
+     * so each page is written by exactly one task and no synchronization is needed.
+     * Returns { L1 difference, rank of the dangling pages } of the range.
+     */
+    private class IterationTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        IterationTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > TASK_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                IterationTask left = new IterationTask(from, middle);
+                left.fork();
+                double[] right = new IterationTask(middle, to).compute();
+                double[] sum = left.join();
+                sum[0] += right[0];
+                sum[1] += right[1];
+                return sum;
+            }
+
+            double difference = 0, dangling = 0;
+            for (int node = from; node < to; node++) {
+                double sum = 0;
+                for (int i = graph.getInStart(node), end = graph.getInEnd(node); i < end; i++) {
+                    sum += contributions[graph.getInSource(i)];
+                }
+
+                double rank = baseRank + damping * sum;
+                int outDegree = graph.getOutDegree(node);
+                difference += Math.abs(rank - ranks[node]);
+                nextRanks[node] = rank;
+                nextContributions[node] = outDegree > 0 ? rank / outDegree : 0;
+                if (outDegree == 0)
+                    dangling += rank;
+            }
+            return new double[] { difference, dangling };
+        }
+    }
+
+    private double[] iterate(ForkJoinPool pool) {
+        int numOfNodes = graph.getNumOfNodes();
+        ranks = new double[numOfNodes];
+        nextRanks = new double[numOfNodes];
+        contributions = new double[numOfNodes];
+        nextContributions = new double[numOfNodes];
+
+        double dangling = 0;
+        for (int node = 0; node < numOfNodes; node++) {
+            int outDegree = graph.getOutDegree(node);
+            ranks[node] = 1.0 / numOfNodes;
+            contributions[node] = outDegree > 0 ? ranks[node] / outDegree : 0;
+            if (outDegree == 0)
+                dangling += ranks[node];
+        }
+
+        for (int iteration = 1; iteration <= maxIterations; iteration++) {
+            LocalDateTime iterationAt = LocalDateTime.now();
+            // The rank of dangling pages is spread evenly, as if they linked to every page.
+            baseRank = (1 - damping + damping * dangling) / numOfNodes;
+            double[] result = pool.invoke(new IterationTask(0, numOfNodes));
+
+            double[] swap = ranks; ranks = nextRanks; nextRanks = swap;
+            swap = contributions; contributions = nextContributions; nextContributions = swap;
+            dangling = result[1];
+
+            System.out.format("PageRank iteration %d, L1 difference %.3e, in %s.%n",
+                    iteration, result[0], Utility.elapsedTime(iterationAt, LocalDateTime.now()));
+            if (result[0] < tolerance)
+                break;
+        }
+
+        return ranks;
+    }
+
+    private boolean hasColumn(String column) throws SQLException {
+        try (Statement statement = dbConnection.createStatement();
+             ResultSet result = statement.executeQuery("PRAGMA table_info(pages)")) {
+            while (result.next()) {
+                if (column.equalsIgnoreCase(result.getString("name")))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void ensureColumn() throws SQLException {
+        if (hasColumn("pageRank"))
+            return;
+
+        try (Statement statement = dbConnection.createStatement()) {
+            statement.execute("ALTER TABLE pages ADD COLUMN pageRank REAL");
+        }
+    }
+
+    private void writeScores(TitleDictionary dictionary, double[] scores) throws SQLException {
+        // A page whose rank changed is bumped past the largest changeSeq, as the crawler does on a write,
+        // so that the incremental indexer (-I -P) re-indexes it with the new rank.
+        final String SQL_UPDATE = "UPDATE pages SET pageRank = ?, " +
+                "changeSeq = (SELECT IFNULL(MAX(changeSeq), 0) + 1 FROM pages) " +
+                "WHERE title = ? AND pageRank IS NOT ?";
+        // Databases crawled before the changeSeq column, which cannot be indexed incrementally anyway.
+        final String SQL_UPDATE_RANK_ONLY = "UPDATE pages SET pageRank = ? WHERE title = ? AND pageRank IS NOT ?";
+        ensureColumn();
+        boolean hasChangeSeq = hasColumn("changeSeq");
+
+        boolean autoCommit = dbConnection.getAutoCommit();
+        dbConnection.setAutoCommit(false);
+        try (PreparedStatement statement = dbConnection.prepareStatement(
+                hasChangeSeq ? SQL_UPDATE : SQL_UPDATE_RANK_ONLY)) {
+            for (int node = 0; node < scores.length; node++) {
+                statement.setDouble(1, scores[node]);
+                statement.setString(2, dictionary.get(node));
+                statement.setDouble(3, scores[node]);
+                statement.addBatch();
+
+                if ((node + 1) % BATCH_UPDATE_COUNT == 0 || node + 1 == scores.length) {
+                    statement.executeBatch();
+                    dbConnection.commit();
+                }
+            }
+        } finally {
+            dbConnection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static TitleDictionary loadTitles(Connection dbConnection) throws SQLException {
+        // BINARY collation compares the UTF-8 bytes, which is the order the dictionary wants.
+        final String SQL_QUERY = "SELECT title FROM pages ORDER BY title";
+        TitleDictionary dictionary = new TitleDictionary();
+
+        try (Statement statement = dbConnection.createStatement();
+             ResultSet result = statement.executeQuery(SQL_QUERY)) {
+            while (result.next()) {
+                dictionary.add(result.getString("title"));
+            }
+        }
+
+        dictionary.trim();
+        return dictionary;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public void start() {
+        LocalDateTime startAt = LocalDateTime.now();
+        System.out.println("PageRank started at " + startAt.toLocalTime() + ". " +
+                "Threads: " + numOfThreads + ", Damping: " + damping + ", Tolerance: " + tolerance + ".");
+
+        try {
+            TitleDictionary dictionary = loadTitles(dbConnection);
+            System.out.format("PageRank loaded %d titles (%.1f MB) in %s.%n", dictionary.size(),
+                    dictionary.memoryUsage() / 1048576.0, Utility.elapsedTime(startAt, LocalDateTime.now()));
+
+            LocalDateTime graphAt = LocalDateTime.now();
+            graph = LinkGraph.build(dbConnection, dictionary);
+            System.out.format("PageRank built the graph of %d pages & %d links (%.1f MB off-heap) in %s, " +
+                            "heap in use %.1f MB.%n", graph.getNumOfNodes(), graph.getNumOfEdges(),
+                    graph.getNumOfEdges() * 4 / 1048576.0, Utility.elapsedTime(graphAt, LocalDateTime.now()),
+                    usedHeap() / 1048576.0);
+
+            if (graph.getNumOfNodes() == 0) {
+                System.out.println("PageRank found no pages.");
+                return;
+            }
+
+            LocalDateTime iterateAt = LocalDateTime.now();
+            ForkJoinPool pool = new ForkJoinPool(numOfThreads);
+            double[] scores = iterate(pool);
+            pool.shutdown();
+            System.out.println("PageRank iterated in " + Utility.elapsedTime(iterateAt, LocalDateTime.now()) + ".");
+
+            System.out.println("Top pages:");
+            IntStream.range(0, scores.length).boxed()
+                    .sorted(Comparator.comparingDouble((Integer node) -> scores[node]).reversed())
+                    .limit(10)
+                    .forEach(node -> System.out.format("  %.6e  %s%n", scores[node], dictionary.get(node)));
+
+            if (writeBack) {
+                LocalDateTime writeAt = LocalDateTime.now();
+                writeScores(dictionary, scores);
+                System.out.println("PageRank wrote " + scores.length + " scores in " +
+                        Utility.elapsedTime(writeAt, LocalDateTime.now()) + ".");
+            }
+
+            System.out.println("Summary: PageRank spent " + Utility.elapsedTime(startAt, LocalDateTime.now()) + ".");
+        } catch (IOException e) {
+            System.out.println("PageRank throws an IOException: " + e.getMessage());
+        } catch (SQLException e) {
+            System.out.println("PageRank throws an SQLException: " + e.getMessage());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // Titles out of the expected order, or a graph too large to hold.
+            System.out.println("PageRank cannot build the link graph: " + e.getMessage());
+        }
+    }
+
+    private static void printMessage(String message) {
+        System.out.println("pagerank: " + message);
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: pagerank [options] <jdbc-url>");
+        System.out.println("use -h for a list of possible options");
+        System.exit(1);
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("pagerank [options] <jdbc-url>", options);
+        System.out.println();
+    }
+
+    private static Optional<Connection> getConnection(String jdbcUrl) throws ClassNotFoundException {
+        final String SQL_COUNT = "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'pages'";
+        Connection dbConnection = null;
+
+        Class.forName("org.sqlite.JDBC");
+        try {
+            dbConnection = DriverManager.getConnection(jdbcUrl);
+            Statement query = dbConnection.createStatement();
+            ResultSet result = query.executeQuery(SQL_COUNT);
+
+            result.next();
+            int count = result.getInt(1);
+            result.close();
+            query.close();
+
+            if (count > 0) {
+                return Optional.of(dbConnection);
+            } else {
+                dbConnection.close();
+                return Optional.empty();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    public static void main(String args[]) throws SQLException, ClassNotFoundException {
+        final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+        final int MAX_ITERATIONS = 50;
+        final double TOLERANCE = 1e-6;
+        final double DAMPING = 0.85;
+
+        Options options = new Options();
+        options.addOption(Option.builder("t")
+                        .longOpt("threads")
+                        .argName("NUM OF THREADS")
+                        .desc("the number of threads for the iterations (default: " + NUMBER_OF_THREADS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("i")
+                        .longOpt("iterations")
+                        .argName("NUM OF ITERATIONS")
+                        .desc("the maximum number of iterations (default: " + MAX_ITERATIONS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("e")
+                        .longOpt("tolerance")
+                        .argName("L1 DIFFERENCE")
+                        .desc("stop once the ranks change less than this between iterations " +
+                                "(default: " + TOLERANCE + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("d")
+                        .longOpt("damping")
+                        .argName("FACTOR")
+                        .desc("the probability of following a link instead of teleporting (default: " + DAMPING + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption("N", "no-write", false, "only compute & report the ranks, without writing them back");
+
+        options.addOption(Option.builder("l")
+                        .longOpt("log-output")
+                        .argName("FILE NAME")
+                        .desc("the file to write logs into (default: STDOUT)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption("h", "help", false, "print a synopsis of standard options");
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            List<String> argList = cmd.getArgList();
+
+            if (cmd.hasOption("h")) {
+                printHelp(options);
+                System.exit(0);
+            }
+
+            if (argList.isEmpty()) {
+                printMessage("JDBC url is not specified");
+                printUsage();
+            }
+
+            String logOutput = cmd.getOptionValue("log-output");
+            if (!Utility.openOutputLog(logOutput)) {
+                printMessage("invalid log file path");
+                printUsage();
+            }
+
+            try {
+                int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                int maxIterations = Integer.parseInt(cmd.getOptionValue("iterations",
+                        String.valueOf(MAX_ITERATIONS)));
+                double tolerance = Double.parseDouble(cmd.getOptionValue("tolerance", String.valueOf(TOLERANCE)));
+                double damping = Double.parseDouble(cmd.getOptionValue("damping", String.valueOf(DAMPING)));
+                boolean writeBack = !cmd.hasOption("no-write");
+
+                if (numOfThreads <= 0 || maxIterations <= 0 || damping < 0 || damping >= 1) {
+                    printMessage("invalid option(s)");
+                    printHelp(options);
+                    System.exit(1);
+                }
+
+                Optional<Connection> dbConnection = getConnection(argList.get(0));
+                if (!dbConnection.isPresent()) {
+                    printMessage("invalid JDBC url");
+                    printUsage();
+                } else {
+                    new PageRank(numOfThreads, maxIterations, tolerance, damping, writeBack,
+                            dbConnection.get()).start();
+                    dbConnection.get().close();
+                }
+            } catch (NumberFormatException e) {
+                printMessage("invalid option(s)");
+                printHelp(options);
+                System.exit(1);
+            }
+
+        } catch (ParseException e) {
+            // Lower the first letter, which as default is an upper letter.
+            printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
+            printHelp(options);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package edu.ucr.cs242.ranking;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns page titles into dense int ids, in a compact form.
+ * All titles are packed as UTF-8 into one byte array, in ascending byte order,
+ * so the id of a title is its position, found by binary search.
+ */
+public class TitleDictionary {
+    private byte[] bytes = new byte[1 << 20];
+    private int[] offsets = new int[1 << 16];
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    private static int compare(byte[] a, int aFrom, int aTo, byte[] b) {
+        int length = Math.min(aTo - aFrom, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[aFrom + i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0)
+                return diff;
+        }
+        return (aTo - aFrom) - b.length;
+    }
+
+    /**
+     * Append a title. Titles must be appended in ascending UTF-8 byte order,
+     * which is the order of SQLite's default BINARY collation on a UTF-8 database.
+     * @param title The title.
+     * @return The id of the title.
+     */
+    public int add(String title) {
+        byte[] encoded = title.getBytes(StandardCharsets.UTF_8);
+        if (size > 0 && compare(bytes, offsets[size - 1], offsets[size], encoded) >= 0)
+            throw new IllegalArgumentException("titles are not in ascending byte order: " + title);
+
+        if (size + 2 > offsets.length)
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        int start = offsets[size];
+        if (start + encoded.length > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, start + encoded.length));
+
+        System.arraycopy(encoded, 0, bytes, start, encoded.length);
+        offsets[++size] = start + encoded.length;
+        return size - 1;
+    }
+
+    /**
+     * Release the spare capacity, after all titles are added.
+     */
+    public void trim() {
+        bytes = Arrays.copyOf(bytes, offsets[size]);
+        offsets = Arrays.copyOf(offsets, size + 1);
+    }
+
+    /**
+     * Find the id of a title.
+     * @param title The title.
+     * @return The id, or -1 if not found.
+     */
+    public int lookup(String title) {
+        byte[] encoded = title.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = size - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int diff = compare(bytes, offsets[middle], offsets[middle + 1], encoded);
+            if (diff < 0) {
+                low = middle + 1;
+            } else if (diff > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    public String get(int id) {
+        return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the approximate memory used.
+     * @return The number of bytes.
+     */
+    public long memoryUsage() {
+        return bytes.length + offsets.length * 4L;
+    }
+}
@@ -0,0 +1,144 @@
+package edu.ucr.cs242.searching;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * A size-bounded LRU cache of result pages.
+ * Every entry belongs to the index version it was computed on; once a newer version
+ * of the index is searched, the whole cache is dropped.
+ */
+public class ResultCache {
+    private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+    /**
+     * The key of a result page: the normalized query, together with paging & drill-down.
+     */
+    public static class Key {
+        private final String query;
+        private final int start;
+        private final int count;
+        private final String category;
+        private final int facetCount;
+
+        public Key(String query, int start, int count, String category, int facetCount) {
+            // The analyzer lower-cases and splits on whitespace anyway, thus these queries are the same.
+            this.query = WHITESPACES.matcher(query.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+            this.start = start;
+            this.count = count;
+            this.category = category;
+            this.facetCount = facetCount;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+            return start == other.start && count == other.count && facetCount == other.facetCount &&
+                    query.equals(other.query) && Objects.equals(category, other.category);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, start, count, category, facetCount);
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Key, SearchResult> entries;
+    private long indexVersion = -1;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder invalidationCount = new LongAdder();
+
+    /**
+     * Construct a cache.
+     * @param capacity The maximum number of result pages to keep.
+     */
+    public ResultCache(int capacity) {
+        this.capacity = capacity;
+        // Access order, so the eldest entry is the least recently used one.
+        this.entries = new LinkedHashMap<Key, SearchResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, SearchResult> eldest) {
+                if (size() > ResultCache.this.capacity) {
+                    evictionCount.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Must be called with the lock held.
+    private void checkVersion(long version) {
+        if (version > indexVersion) {
+            if (!entries.isEmpty()) {
+                entries.clear();
+                invalidationCount.increment();
+            }
+            indexVersion = version;
+        }
+    }
+
+    /**
+     * Look up a result page.
+     * @param key     The key of the page.
+     * @param version The version of the index being searched.
+     * @return The cached page, or null if not cached.
+     */
+    public SearchResult get(Key key, long version) {
+        SearchResult result;
+        synchronized (entries) {
+            checkVersion(version);
+            // A searcher still holding an older version must not see the newer results, and vice versa.
+            result = version == indexVersion ? entries.get(key) : null;
+        }
+
+        if (result != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Cache a result page.
+     * @param key     The key of the page.
+     * @param version The version of the index the page was computed on.
+     * @param result  The page.
+     */
+    public void put(Key key, long version, SearchResult result) {
+        synchronized (entries) {
+            checkVersion(version);
+            // Computed on an older version, which is already stale.
+            if (version == indexVersion) {
+                entries.put(key, result);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        long hits = hitCount.sum(), misses = missCount.sum();
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+
+        return String.format("%d/%d entries, %d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations",
+                size, capacity, hits, misses, hits * 100.0 / Math.max(hits + misses, 1),
+                evictionCount.sum(), invalidationCount.sum());
+    }
+}
@@ -0,0 +1,211 @@
+package edu.ucr.cs242.searching;
+
+import edu.ucr.cs242.indexing.CategoryFacets;
+import edu.ucr.cs242.indexing.ReadConnectionPool;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Load the content & categories of a page of hits from the database, and make query-highlighted snippets.
+ * The index does not store the content, so this is where it comes from.
+ */
+public class ResultHydrator {
+    /**
+     * The maximum number of titles bound in one query, well below the SQLite limit of 999 host parameters.
+     */
+    public static final int MAX_TITLES_PER_QUERY = 500;
+    /**
+     * The approximate length of a snippet (characters).
+     */
+    public static final int SNIPPET_LENGTH = 200;
+    /**
+     * The markers of a query term in a snippet. The line protocol is plain text, thus no HTML tags,
+     * which would need the content around them escaped.
+     */
+    public static final String HIGHLIGHT_START = "**";
+    public static final String HIGHLIGHT_END = "**";
+
+    /**
+     * The content & categories of a page.
+     */
+    public static class Page {
+        private final String content;
+        private final List<String> categories;
+
+        public String getContent() {
+            return content;
+        }
+
+        public List<String> getCategories() {
+            return categories;
+        }
+
+        public Page(String content, List<String> categories) {
+            this.content = content;
+            this.categories = categories;
+        }
+    }
+
+    private final ReadConnectionPool connectionPool;
+    private final Analyzer analyzer;
+
+    /**
+     * Construct a hydrator.
+     * @param connectionPool The pool of read-only connections to the pages database.
+     * @param analyzer       The analyzer the content was indexed with, to locate the query terms.
+     */
+    public ResultHydrator(ReadConnectionPool connectionPool, Analyzer analyzer) {
+        this.connectionPool = connectionPool;
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Load the pages with given titles, in one round trip per MAX_TITLES_PER_QUERY titles.
+     * @param titles The titles of the pages.
+     * @return The pages by title; titles not in the database are absent.
+     */
+    public Map<String, Page> fetch(List<String> titles) throws SQLException, InterruptedException {
+        Map<String, Page> pages = new HashMap<>();
+        if (titles.isEmpty())
+            return pages;
+
+        Connection dbConnection = connectionPool.acquire();
+        try {
+            for (int from = 0; from < titles.size(); from += MAX_TITLES_PER_QUERY) {
+                List<String> batch = titles.subList(from, Math.min(from + MAX_TITLES_PER_QUERY, titles.size()));
+                String sql = "SELECT title, content, categories FROM pages WHERE title IN (" +
+                        batch.stream().map(title -> "?").collect(Collectors.joining(", ")) + ")";
+
+                try (PreparedStatement statement = dbConnection.prepareStatement(sql)) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        statement.setString(i + 1, batch.get(i));
+                    }
+
+                    try (ResultSet result = statement.executeQuery()) {
+                        while (result.next()) {
+                            pages.put(result.getString("title"), new Page(result.getString("content"),
+                                    CategoryFacets.split(result.getString("categories"))));
+                        }
+                    }
+                }
+            }
+        } finally {
+            connectionPool.release(dbConnection);
+        }
+
+        return pages;
+    }
+
+    private Set<String> analyzeTerms(String text) throws IOException {
+        Set<String> terms = new HashSet<>();
+        try (TokenStream stream = analyzer.tokenStream("content", text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                terms.add(term.toString());
+            }
+            stream.end();
+        }
+        return terms;
+    }
+
+    /**
+     * Make a snippet of the content, around where the query terms are most dense.
+     * @param queryText The query text.
+     * @param content   The page content.
+     * @return The snippet, with the query terms wrapped by HIGHLIGHT_START & HIGHLIGHT_END.
+     */
+    public String snippet(String queryText, String content) throws IOException {
+        Set<String> queryTerms = analyzeTerms(queryText);
+
+        // The [start, end) offsets of every token matching a query term.
+        List<int[]> matches = new ArrayList<>();
+        if (!queryTerms.isEmpty()) {
+            try (TokenStream stream = analyzer.tokenStream("content", content)) {
+                CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+                OffsetAttribute offset = stream.addAttribute(OffsetAttribute.class);
+                stream.reset();
+                while (stream.incrementToken()) {
+                    if (queryTerms.contains(term.toString()))
+                        matches.add(new int[] { offset.startOffset(), offset.endOffset() });
+                }
+                stream.end();
+            }
+        }
+
+        // Slide a window over the matches, and take the one covering the most matches.
+        int bestFirst = 0, bestCount = 0;
+        for (int first = 0, last = 0; first < matches.size(); first++) {
+            last = Math.max(last, first);
+            while (last + 1 < matches.size() && matches.get(last + 1)[1] - matches.get(first)[0] <= SNIPPET_LENGTH)
+                ++last;
+            if (last - first + 1 > bestCount) {
+                bestCount = last - first + 1;
+                bestFirst = first;
+            }
+        }
+
+        // Center the window on its matches, then widen to whole words.
+        int windowStart = 0;
+        if (bestCount > 0) {
+            int matchStart = matches.get(bestFirst)[0];
+            int matchEnd = matches.get(bestFirst + bestCount - 1)[1];
+            windowStart = Math.max(0, matchStart - (SNIPPET_LENGTH - (matchEnd - matchStart)) / 2);
+        }
+        int windowEnd = Math.min(content.length(), windowStart + SNIPPET_LENGTH);
+        while (windowStart > 0 && !Character.isWhitespace(content.charAt(windowStart - 1)))
+            --windowStart;
+        while (windowEnd < content.length() && !Character.isWhitespace(content.charAt(windowEnd)))
+            ++windowEnd;
+
+        StringBuilder builder = new StringBuilder();
+        if (windowStart > 0)
+            builder.append("...");
+
+        int position = windowStart;
+        for (int[] match : matches) {
+            if (match[0] < windowStart || match[1] > windowEnd)
+                continue;
+            builder.append(content, position, match[0])
+                    .append(HIGHLIGHT_START).append(content, match[0], match[1]).append(HIGHLIGHT_END);
+            position = match[1];
+        }
+        builder.append(content, position, windowEnd);
+
+        if (windowEnd < content.length())
+            builder.append("...");
+
+        // A snippet is a single line.
+        return builder.toString().replaceAll("\\s+", " ").trim();
+    }
+
+    /**
+     * Fill in the snippets & categories of hits.
+     * @param queryText The query text.
+     * @param hits      The hits, with titles only.
+     * @return The hits with snippets & categories; hits not found in the database are kept as is.
+     */
+    public List<SearchResult.Hit> hydrate(String queryText, List<SearchResult.Hit> hits)
+            throws IOException, SQLException, InterruptedException {
+        Map<String, Page> pages = fetch(hits.stream().map(SearchResult.Hit::getTitle).collect(Collectors.toList()));
+        List<SearchResult.Hit> hydrated = new ArrayList<>();
+
+        for (SearchResult.Hit hit : hits) {
+            Page page = pages.get(hit.getTitle());
+            hydrated.add(page == null ? hit : new SearchResult.Hit(hit.getTitle(), hit.getScore(),
+                    snippet(queryText, page.getContent()), page.getCategories()));
+        }
+
+        return hydrated;
+    }
+}
@@ -0,0 +1,91 @@
+package edu.ucr.cs242.searching;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serve GET /search?q=QUERY[&start=0][&n=10][&category=NAME][&facets=0],
+ * with the result in the line protocol of SearchResult.
+ */
+public class SearchHttpHandler implements HttpHandler {
+    private final Searcher searcher;
+    private final int defaultCount;
+
+    /**
+     * Construct a handler.
+     * @param searcher     The searcher to serve queries with.
+     * @param defaultCount The number of hits, if not given by the request.
+     */
+    public SearchHttpHandler(Searcher searcher, int defaultCount) {
+        this.searcher = searcher;
+        this.defaultCount = defaultCount;
+    }
+
+    private static Map<String, String> parseParameters(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null)
+            return parameters;
+
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "only GET is supported\n");
+                return;
+            }
+
+            Map<String, String> parameters = parseParameters(exchange.getRequestURI().getRawQuery());
+            String queryText = parameters.getOrDefault("q", "").trim();
+            if (queryText.isEmpty()) {
+                respond(exchange, 400, "parameter q is not specified\n");
+                return;
+            }
+
+            int start = Integer.parseInt(parameters.getOrDefault("start", "0"));
+            int count = Integer.parseInt(parameters.getOrDefault("n", String.valueOf(defaultCount)));
+            int facetCount = Integer.parseInt(parameters.getOrDefault("facets", "0"));
+            if (start < 0 || count < 0 || facetCount < 0) {
+                respond(exchange, 400, "invalid parameter(s)\n");
+                return;
+            }
+
+            SearchResult result = searcher.search(queryText, start, count, parameters.get("category"), facetCount);
+            respond(exchange, 200, result.toString());
+        } catch (IllegalArgumentException e) {
+            // Including NumberFormatException, and malformed escapes from URLDecoder.
+            respond(exchange, 400, "invalid parameter(s)\n");
+        } catch (IOException e) {
+            System.out.println("SearchHttpHandler throws an IOException: " + e.getMessage());
+            respond(exchange, 500, "internal error\n");
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package edu.ucr.cs242.searching;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page of hits for a query.
+ */
+public class SearchResult {
+    /**
+     * A matching page.
+     */
+    public static class Hit {
+        private final String title;
+        private final float score;
+        private final String snippet;
+        private final List<String> categories;
+
+        public String getTitle() {
+            return title;
+        }
+
+        public float getScore() {
+            return score;
+        }
+
+        public String getSnippet() {
+            return snippet;
+        }
+
+        public List<String> getCategories() {
+            return categories;
+        }
+
+        public Hit(String title, float score) {
+            this(title, score, null, null);
+        }
+
+        /**
+         * Construct a hit, with the details fetched from the database.
+         * @param title      The page title.
+         * @param score      The score of the page.
+         * @param snippet    The query-highlighted snippet of the content.
+         * @param categories The categories the page belongs to.
+         */
+        public Hit(String title, float score, String snippet, List<String> categories) {
+            this.title = title;
+            this.score = score;
+            this.snippet = snippet;
+            this.categories = categories;
+        }
+    }
+
+    private final String query;
+    private final long totalHits;
+    private final int start;
+    private final List<Hit> hits;
+    private final List<Map.Entry<String, Integer>> facets;
+    private final long latencyNanos;
+
+    public String getQuery() {
+        return query;
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public List<Hit> getHits() {
+        return hits;
+    }
+
+    public List<Map.Entry<String, Integer>> getFacets() {
+        return facets;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * Construct a result page.
+     * @param query        The query text.
+     * @param totalHits    The total number of matching pages.
+     * @param start        The rank (0-based) of the first hit in this page.
+     * @param hits         The hits in this page.
+     * @param facets       The category counts of all matching pages (may be empty).
+     * @param latencyNanos The time spent on serving the query (nanoseconds).
+     */
+    public SearchResult(String query, long totalHits, int start, List<Hit> hits,
+                        List<Map.Entry<String, Integer>> facets, long latencyNanos) {
+        this.query = query;
+        this.totalHits = totalHits;
+        this.start = start;
+        this.hits = hits;
+        this.facets = facets;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * Copy the result for another request of the same query, e.g. served from the cache.
+     * @param query        The query text of the request.
+     * @param latencyNanos The time spent on serving the request (nanoseconds).
+     * @return The copy, sharing the hits and facets with this result.
+     */
+    public SearchResult copyFor(String query, long latencyNanos) {
+        return new SearchResult(query, totalHits, start, hits, facets, latencyNanos);
+    }
+
+    /**
+     * Format the result in the line protocol of the searcher:
+     * a header line, one line per hit as "rank TAB score TAB title [TAB snippet TAB categories]",
+     * and one line per category count.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("# query: %s; hits: %d; latency: %.3f ms%n",
+                query, totalHits, latencyNanos / 1e6));
+
+        for (int i = 0; i < hits.size(); i++) {
+            Hit hit = hits.get(i);
+            builder.append(String.format("%d\t%.4f\t%s", start + i + 1, hit.getScore(), hit.getTitle()));
+            if (hit.getSnippet() != null) {
+                builder.append('\t').append(hit.getSnippet())
+                        .append('\t').append(String.join("|", hit.getCategories()));
+            }
+            builder.append(System.lineSeparator());
+        }
+
+        for (Map.Entry<String, Integer> facet : facets) {
+            builder.append(String.format("# category: %s\t%d%n", facet.getKey(), facet.getValue()));
+        }
+
+        return builder.toString();
+    }
+}
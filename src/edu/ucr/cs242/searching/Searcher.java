@@ -0,0 +1,500 @@
+package edu.ucr.cs242.searching;
+
+import edu.ucr.cs242.LatencyHistogram;
+import edu.ucr.cs242.Utility;
+import edu.ucr.cs242.indexing.CategoryFacets;
+import edu.ucr.cs242.indexing.ReadConnectionPool;
+import edu.ucr.cs242.indexing.StaticRank;
+import org.apache.commons.cli.*;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.QueryBuilder;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class Searcher {
+    /**
+     * The boost of title matches over content matches.
+     */
+    public static final float TITLE_BOOST = 2.0f;
+    /**
+     * The interval (seconds) of printing the query statistics, while serving.
+     */
+    public static final int REPORT_INTERVAL = 10;
+
+    private final Directory directory;
+    private final SearcherManager searcherManager;
+    private final ExecutorService searchExecutor;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final QueryBuilder queryBuilder = new QueryBuilder(analyzer);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final ResultCache resultCache;
+    private final ReadConnectionPool connectionPool;
+    private final ResultHydrator hydrator;
+    private final float rankWeight;
+    private final int rankDepth;
+    private final LocalDateTime startAt = LocalDateTime.now();
+
+    /**
+     * Construct a searcher with given settings.
+     * @param indexPath       The directory of the Lucene index.
+     * @param numOfThreads    The number of threads each query may use, searching index segments in parallel.
+     * @param refreshInterval The interval (seconds) of checking whether the index has changed.
+     * @param cacheSize       The maximum number of result pages to cache (0 to disable).
+     * @param jdbcUrl         The JDBC url of the pages database, to fetch snippets from (null to disable).
+     * @param numOfWorkers    The number of queries served at once, thus the number of database connections.
+     * @param rankWeight      The weight of the PageRank added to the BM25 score (0 for BM25 only).
+     * @param rankDepth       The number of matches collected per segment sorted by PageRank (0 for all).
+     */
+    public Searcher(Path indexPath, int numOfThreads, int refreshInterval, int cacheSize,
+                    String jdbcUrl, int numOfWorkers, float rankWeight, int rankDepth)
+            throws IOException, SQLException {
+        this.rankWeight = rankWeight;
+        this.rankDepth = rankDepth;
+        this.resultCache = cacheSize > 0 ? new ResultCache(cacheSize) : null;
+        this.connectionPool = jdbcUrl != null ? new ReadConnectionPool(jdbcUrl, numOfWorkers) : null;
+        this.hydrator = connectionPool != null ? new ResultHydrator(connectionPool, analyzer) : null;
+        this.directory = FSDirectory.open(indexPath);
+        this.searchExecutor = Executors.newFixedThreadPool(numOfThreads);
+        this.searcherManager = new SearcherManager(directory, new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                return new IndexSearcher(reader, searchExecutor);
+            }
+        });
+
+        // Pick up the commits of the indexer, without blocking the queries.
+        scheduler.scheduleWithFixedDelay(() -> {
+            try { searcherManager.maybeRefresh(); }
+            catch (IOException e) { System.out.println("Searcher cannot refresh the index: " + e.getMessage()); }
+        }, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+    }
+
+    private Query buildQuery(String queryText) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        Query titleQuery = queryBuilder.createBooleanQuery("title", queryText);
+        Query contentQuery = queryBuilder.createBooleanQuery("content", queryText);
+
+        // Null if nothing is left after analysis, e.g. all stop words.
+        if (titleQuery != null)
+            builder.add(new BoostQuery(titleQuery, TITLE_BOOST), BooleanClause.Occur.SHOULD);
+        if (contentQuery != null)
+            builder.add(contentQuery, BooleanClause.Occur.SHOULD);
+
+        return builder.build();
+    }
+
+    /**
+     * Search the index. Safe to be called from many threads at once.
+     * @param queryText  The query text.
+     * @param start      The rank (0-based) of the first hit to return.
+     * @param count      The number of hits to return.
+     * @param category   The category to drill down into (null for all).
+     * @param facetCount The number of top categories to count (0 for none).
+     * @return The result page.
+     */
+    public SearchResult search(String queryText, int start, int count, String category, int facetCount)
+            throws IOException {
+        long startAt = System.nanoTime();
+        ResultCache.Key cacheKey = new ResultCache.Key(queryText, start, count, category, facetCount);
+
+        SearchResult result;
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            // The version changes with every commit, that is whenever the cached results may be stale.
+            long indexVersion = ((DirectoryReader) searcher.getIndexReader()).getVersion();
+            SearchResult cached = resultCache != null ? resultCache.get(cacheKey, indexVersion) : null;
+
+            if (cached != null) {
+                result = cached.copyFor(queryText, System.nanoTime() - startAt);
+            } else {
+                Query query = buildQuery(queryText);
+                if (category != null)
+                    query = CategoryFacets.drillDown(query, category);
+
+                int numOfHits = Math.max(start + count, 1);
+                TopDocs topDocs = rankWeight != 0 || rankDepth > 0 ?
+                        StaticRank.search(searcher, query, numOfHits, rankWeight, rankDepth) :
+                        searcher.search(query, numOfHits);
+                List<SearchResult.Hit> hits = new ArrayList<>();
+                for (int i = start; i < topDocs.scoreDocs.length; i++) {
+                    ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+                    hits.add(new SearchResult.Hit(searcher.doc(scoreDoc.doc).get("title"), scoreDoc.score));
+                }
+
+                // One round trip to the database for the whole page.
+                if (hydrator != null)
+                    hits = hydrateHits(queryText, hits);
+
+                List<Map.Entry<String, Integer>> facets = facetCount > 0 ?
+                        CategoryFacets.count(searcher, query, facetCount) : Collections.emptyList();
+                result = new SearchResult(queryText, topDocs.totalHits, start, hits, facets,
+                        System.nanoTime() - startAt);
+
+                if (resultCache != null)
+                    resultCache.put(cacheKey, indexVersion, result);
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+
+        latency.record(result.getLatencyNanos());
+        return result;
+    }
+
+    private List<SearchResult.Hit> hydrateHits(String queryText, List<SearchResult.Hit> hits) throws IOException {
+        try {
+            return hydrator.hydrate(queryText, hits);
+        } catch (SQLException e) {
+            // Still worth returning the titles.
+            System.out.println("Searcher cannot fetch the snippets: " + e.getMessage());
+            return hits;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return hits;
+        }
+    }
+
+    /**
+     * Print the number of queries served, the QPS and the latency distribution so far.
+     * @param summary Whether this is the final report.
+     */
+    public void reportProgress(boolean summary) {
+        Duration elapsed = Duration.between(startAt, LocalDateTime.now());
+        System.out.format("%sSearcher served %d queries, %.1f QPS. Latency: %s. Elapsed time: %s.%n",
+                summary ? "Summary: " : "", latency.getCount(),
+                latency.getCount() * 1000.0 / Math.max(elapsed.toMillis(), 1), latency,
+                Utility.elapsedTime(elapsed));
+
+        if (resultCache != null) {
+            System.out.println((summary ? "Summary: " : "") + "Searcher result cache: " + resultCache + ".");
+        }
+    }
+
+    /**
+     * Serve queries from STDIN, one per line, by a pool of workers.
+     * The results are written to the given stream as soon as they are ready, thus may be out of order.
+     * @param numOfWorkers The number of queries served at once.
+     * @param count        The number of hits per query.
+     * @param output       The stream to write results into.
+     */
+    public void serveStdio(int numOfWorkers, int count, PrintStream output) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(numOfWorkers);
+        // Bounded, so we don't read the whole input ahead.
+        Semaphore inFlight = new Semaphore(numOfWorkers * 2);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+
+        try {
+            while ((line = reader.readLine()) != null) {
+                String queryText = line.trim();
+                if (queryText.isEmpty())
+                    continue;
+
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        String result = search(queryText, 0, count, null, 0).toString();
+                        synchronized (output) {
+                            output.println(result);
+                        }
+                    } catch (IOException e) {
+                        System.out.println("Searcher throws an IOException: " + e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            // Stop reading, and finish what we have.
+        } finally {
+            workers.shutdown();
+            try { workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS); }
+            catch (InterruptedException e) { workers.shutdownNow(); }
+        }
+    }
+
+    /**
+     * Serve queries over HTTP, until the process is terminated.
+     * @param port         The local port to listen on.
+     * @param numOfWorkers The number of queries served at once.
+     * @param count        The default number of hits per query.
+     */
+    public void serveHttp(int port, int numOfWorkers, int count) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/search", new SearchHttpHandler(this, count));
+        server.setExecutor(Executors.newFixedThreadPool(numOfWorkers));
+        server.start();
+
+        scheduler.scheduleAtFixedRate(() -> reportProgress(false), REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(0);
+            reportProgress(true);
+        }));
+
+        System.out.println("Searcher started at " + startAt.toLocalTime() + ". " +
+                "Listening on http://localhost:" + server.getAddress().getPort() + "/search?q=...");
+    }
+
+    /**
+     * Replay the queries in a file, by a number of concurrent clients, as fast as possible.
+     * Each client runs through all the queries, starting from a different position.
+     * @param queryFile     The file of queries, one per line.
+     * @param numOfClients  The number of concurrent clients.
+     * @param count         The number of hits per query.
+     */
+    public void benchmark(Path queryFile, int numOfClients, int count) throws IOException {
+        List<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(queryFile, StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty())
+                queries.add(line.trim());
+        }
+
+        if (queries.isEmpty()) {
+            System.out.println("Searcher cannot find any queries in " + queryFile + ".");
+            return;
+        }
+
+        System.out.println("Searcher benchmark started at " + LocalDateTime.now().toLocalTime() + ". " +
+                "Queries: " + queries.size() + ". Clients: " + numOfClients + ".");
+        Thread[] clients = new Thread[numOfClients];
+        for (int i = 0; i < numOfClients; i++) {
+            int offset = i * queries.size() / numOfClients;
+            clients[i] = new Thread(() -> {
+                for (int j = 0; j < queries.size(); j++) {
+                    try { search(queries.get((offset + j) % queries.size()), 0, count, null, 0); }
+                    catch (IOException e) { System.out.println("Searcher throws an IOException: " + e.getMessage()); }
+                }
+            });
+            clients[i].start();
+        }
+
+        Utility.waitThreads(clients);
+    }
+
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        searcherManager.close();
+        if (connectionPool != null)
+            connectionPool.close();
+        searchExecutor.shutdown();
+        directory.close();
+    }
+
+    private static boolean indexExists(Path indexPath) throws IOException {
+        try (Directory directory = FSDirectory.open(indexPath)) {
+            return DirectoryReader.indexExists(directory);
+        }
+    }
+
+    private static void printMessage(String message) {
+        System.out.println("searcher: " + message);
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: searcher [options] <index-path>");
+        System.out.println("use -h for a list of possible options");
+        System.exit(1);
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("searcher [options] <index-path>", options);
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws IOException, SQLException, ClassNotFoundException {
+        final int NUMBER_OF_THREADS = Runtime.getRuntime().availableProcessors();
+        final int NUMBER_OF_WORKERS = Runtime.getRuntime().availableProcessors();
+        final int NUMBER_OF_HITS = 10;
+        final int REFRESH_INTERVAL = 1;
+        final int CACHE_SIZE = 10000;
+        final float RANK_WEIGHT = 0;
+        final int RANK_DEPTH = 0;
+
+        Options options = new Options();
+        options.addOption(Option.builder("t")
+                        .longOpt("threads")
+                        .argName("NUM OF THREADS")
+                        .desc("the number of threads searching the index segments of a query in parallel " +
+                                "(default: " + NUMBER_OF_THREADS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("w")
+                        .longOpt("workers")
+                        .argName("NUM OF WORKERS")
+                        .desc("the number of queries served at once (default: " + NUMBER_OF_WORKERS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("n")
+                        .longOpt("hits")
+                        .argName("NUM OF HITS")
+                        .desc("the number of hits per query (default: " + NUMBER_OF_HITS + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("r")
+                        .longOpt("refresh")
+                        .argName("SECONDS")
+                        .desc("the interval of checking whether the index has changed (default: " +
+                                REFRESH_INTERVAL + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("C")
+                        .longOpt("cache-size")
+                        .argName("NUM OF PAGES")
+                        .desc("the maximum number of result pages to cache, 0 to disable (default: " +
+                                CACHE_SIZE + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("R")
+                        .longOpt("rank-weight")
+                        .argName("WEIGHT")
+                        .desc("the weight of the PageRank (stored by indexer -P) added to the BM25 score, " +
+                                "0 for BM25 only (default: " + RANK_WEIGHT + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("E")
+                        .longOpt("early-termination")
+                        .argName("NUM OF MATCHES")
+                        .desc("stop each index segment sorted by PageRank after this many matches, " +
+                                "0 to collect all matches (default: " + RANK_DEPTH + ")")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("d")
+                        .longOpt("database")
+                        .argName("JDBC URL")
+                        .desc("the pages database of the crawler, to show snippets & categories of the hits " +
+                                "(default: titles only)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("p")
+                        .longOpt("port")
+                        .argName("PORT")
+                        .desc("serve queries over HTTP on this local port, rather than from STDIN")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("B")
+                        .longOpt("benchmark")
+                        .argName("QUERY FILE")
+                        .desc("replay the queries in this file by as many clients as workers, " +
+                                "and report latency & QPS")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption(Option.builder("l")
+                        .longOpt("log-output")
+                        .argName("FILE NAME")
+                        .desc("the file to write logs into (default: STDOUT)")
+                        .numberOfArgs(1)
+                        .build());
+
+        options.addOption("h", "help", false, "print a synopsis of standard options");
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            List<String> argList = cmd.getArgList();
+
+            if (cmd.hasOption("h")) {
+                printHelp(options);
+                System.exit(0);
+            }
+
+            if (argList.isEmpty()) {
+                printMessage("index path is not specified");
+                printUsage();
+            }
+
+            // Results always go to STDOUT, even if logs are redirected.
+            PrintStream resultOutput = System.out;
+            String logOutput = cmd.getOptionValue("log-output");
+            if (!Utility.openOutputLog(logOutput)) {
+                printMessage("invalid log file path");
+                printUsage();
+            }
+
+            try {
+                int numOfThreads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(NUMBER_OF_THREADS)));
+                int numOfWorkers = Integer.parseInt(cmd.getOptionValue("workers", String.valueOf(NUMBER_OF_WORKERS)));
+                int numOfHits = Integer.parseInt(cmd.getOptionValue("hits", String.valueOf(NUMBER_OF_HITS)));
+                int refreshInterval = Integer.parseInt(cmd.getOptionValue("refresh", String.valueOf(REFRESH_INTERVAL)));
+                int cacheSize = Integer.parseInt(cmd.getOptionValue("cache-size", String.valueOf(CACHE_SIZE)));
+                float rankWeight = Float.parseFloat(cmd.getOptionValue("rank-weight", String.valueOf(RANK_WEIGHT)));
+                int rankDepth = Integer.parseInt(cmd.getOptionValue("early-termination", String.valueOf(RANK_DEPTH)));
+
+                if (numOfThreads <= 0 || numOfWorkers <= 0 || refreshInterval <= 0 ||
+                        rankWeight < 0 || Float.isNaN(rankWeight) || rankDepth < 0) {
+                    printMessage("invalid option(s)");
+                    printHelp(options);
+                    System.exit(1);
+                }
+
+                Path indexPath = Paths.get(argList.get(0));
+                if (!Files.isDirectory(indexPath) || !indexExists(indexPath)) {
+                    printMessage("invalid index path (not exist or no index)");
+                    printUsage();
+                }
+
+                String jdbcUrl = cmd.getOptionValue("database");
+                if (jdbcUrl != null) {
+                    // Register the default sqlite driver.
+                    Class.forName("org.sqlite.JDBC");
+                }
+
+                Searcher searcher = new Searcher(indexPath, numOfThreads, refreshInterval, cacheSize,
+                        jdbcUrl, numOfWorkers, rankWeight, rankDepth);
+                if (cmd.hasOption("port")) {
+                    // Keeps running in the HTTP server threads.
+                    searcher.serveHttp(Integer.parseInt(cmd.getOptionValue("port")), numOfWorkers, numOfHits);
+                } else {
+                    if (cmd.hasOption("benchmark")) {
+                        searcher.benchmark(Paths.get(cmd.getOptionValue("benchmark")), numOfWorkers, numOfHits);
+                    } else {
+                        searcher.serveStdio(numOfWorkers, numOfHits, resultOutput);
+                    }
+                    searcher.reportProgress(true);
+                    searcher.close();
+                }
+            } catch (NumberFormatException e) {
+                printMessage("invalid option(s)");
+                printHelp(options);
+                System.exit(1);
+            }
+        } catch (ParseException e) {
+            // Lower the first letter, which as default is an upper letter.
+            printMessage(e.getMessage().substring(0, 1).toLowerCase() + e.getMessage().substring(1));
+            printHelp(options);
+            System.exit(1);
+        }
+    }
+}